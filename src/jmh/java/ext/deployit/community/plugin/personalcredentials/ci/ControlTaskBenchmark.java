@@ -0,0 +1,88 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.ci;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.udm.Deployed;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubCi;
+import ext.deployit.community.plugin.personalcredentials.stub.StubContainer;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.StubParameters;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+/**
+ * Planning of a control task by {@link PersonalCredentialsControlTaskDelegate#executedPCScriptDelegate}, which resolves
+ * the target host, sets the credentials of the parameters on it and creates the script step, for a container, a
+ * deployed, and <code>host</code> argument expressions on the CI and on the parameters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlTaskBenchmark {
+
+    private final StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1");
+    private final StubContainer server = new StubContainer("Infrastructure/web-01/tomcat", host);
+    private final Deployed<?, ?> deployed = Stubs.deployed("Infrastructure/web-01/tomcat/app", server);
+    private final StubCi dataSource = new StubCi("Infrastructure/web-01/tomcat/ds").with("server", server);
+    private final StubParameters params = new StubParameters().with("target", server).with("unixUsername", "deployer").with("unixPassword", "secret");
+
+    private final Map<String, String> args = new HashMap<String, String>();
+    private final Map<String, String> ciExpressionArgs = new HashMap<String, String>();
+    private final Map<String, String> parameterExpressionArgs = new HashMap<String, String>();
+
+    @Setup
+    public void createArguments() {
+        args.put("script", "personalcredentials/check");
+        ciExpressionArgs.putAll(args);
+        ciExpressionArgs.put("host", "${thisCi.server.host}");
+        parameterExpressionArgs.putAll(args);
+        parameterExpressionArgs.put("host", "${params.target}");
+    }
+
+    @Benchmark
+    public List<Step> container() {
+        return PersonalCredentialsControlTaskDelegate.executedPCScriptDelegate(server, "check", args, params);
+    }
+
+    @Benchmark
+    public List<Step> deployed() {
+        return PersonalCredentialsControlTaskDelegate.executedPCScriptDelegate(deployed, "check", args, params);
+    }
+
+    @Benchmark
+    public List<Step> ciExpression() {
+        return PersonalCredentialsControlTaskDelegate.executedPCScriptDelegate(dataSource, "check", ciExpressionArgs, params);
+    }
+
+    @Benchmark
+    public List<Step> parameterExpression() {
+        return PersonalCredentialsControlTaskDelegate.executedPCScriptDelegate(dataSource, "check", parameterExpressionArgs, params);
+    }
+}
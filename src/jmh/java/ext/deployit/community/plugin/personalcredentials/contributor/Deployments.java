@@ -0,0 +1,53 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Operation;
+import com.xebialabs.deployit.plugin.api.udm.Container;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubContainer;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+/**
+ * Synthetic deltas on one host for every ten deltas. A third of the deployeds are on a host, a third on a server of
+ * a host and a third on a data source nested in a server; one delta in five is a modification with a previous
+ * deployed on the same container.
+ */
+class Deployments {
+
+    static final int DELTAS_PER_HOST = 10;
+
+    static List<Delta> deltas(int count) {
+        List<Container> containers = new ArrayList<Container>();
+        for (int i = 0, hosts = Math.max(1, count / DELTAS_PER_HOST); i < hosts; i++) {
+            StubHost host = new StubHost("Infrastructure/host-" + i, "10." + (i >> 16 & 0xff) + "." + (i >> 8 & 0xff) + "." + (i & 0xff));
+            StubContainer server = new StubContainer(host.getId() + "/tomcat", host);
+            containers.add(host);
+            containers.add(server);
+            containers.add(new StubContainer(server.getId() + "/datasource", server));
+        }
+        List<Delta> deltas = new ArrayList<Delta>();
+        for (int i = 0; i < count; i++) {
+            Container container = containers.get(i % containers.size());
+            String id = container.getId() + "/app-" + i;
+            if (i % 5 == 4) {
+                deltas.add(Stubs.delta(Operation.MODIFY, Stubs.deployed(id, container), Stubs.deployed(id, container)));
+            } else {
+                deltas.add(Stubs.delta(Operation.CREATE, null, Stubs.deployed(id, container)));
+            }
+        }
+        return deltas;
+    }
+}
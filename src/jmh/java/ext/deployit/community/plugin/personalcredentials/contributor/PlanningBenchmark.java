@@ -0,0 +1,68 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.deployment.specification.DeltaSpecification;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+/**
+ * Time added to the planning of a deployment by {@link IdentityContributor#injectPersonalCredentials}: resolving the
+ * hosts and setting the credentials of the deployed application on them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlanningBenchmark {
+
+    @Param({ "10", "100", "1000", "10000", "50000" })
+    public int deltas;
+
+    @Param({ "false", "true" })
+    public boolean checkConnection;
+
+    private DeltaSpecification specification;
+
+    @Setup
+    public void createSpecification() {
+        List<Delta> deltaList = Deployments.deltas(deltas);
+        StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/benchmark/app", new StubEnvironment("Environments/benchmark"),
+                CredentialsType.CT_USERNAME).with("username", "deployer").with("password", "secret").with("checkConnection", checkConnection);
+        specification = Stubs.specification(deployedApplication, deltaList);
+    }
+
+    @Benchmark
+    public List<Step> injectPersonalCredentials() {
+        return IdentityContributor.injectPersonalCredentials(specification);
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import java.lang.reflect.Field;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+/**
+ * {@link ScriptRunner#executeScript} of the credential script shipped with the plugin, with its library, on Jython.
+ * A cold run starts with no engine pool and no cached script, so it pays for the engine startup, the library and the
+ * compilation of the script; a warm run borrows an engine and a compiled script from the pool.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class ScriptRunnerBenchmark {
+
+    static final String SCRIPT = "xlc/personalcredentials/setcredentials.py";
+    static final String LIBRARY = "xlc/personalcredentials/library.py";
+
+    @Param({ "10", "1000" })
+    public int hosts;
+
+    private StubDeployedApplication deployedApplication;
+    private final Set<Host> hostSet = new LinkedHashSet<Host>();
+
+    @Setup
+    public void createHosts() {
+        deployedApplication = new StubDeployedApplication("Environments/benchmark/app", new StubEnvironment("Environments/benchmark"), CredentialsType.CT_CUSTOM_SCRIPT);
+        for (int i = 0; i < hosts; i++) {
+            hostSet.add(new StubHost("Infrastructure/host-" + i, "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff)));
+        }
+        ScriptRunner.executeScript(deployedApplication, deployedApplication.getEnvironment(), hostSet, SCRIPT, LIBRARY);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 20)
+    public void cold(Cold cold) {
+        ScriptRunner.executeScript(deployedApplication, deployedApplication.getEnvironment(), hostSet, SCRIPT, LIBRARY);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 5, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void warm() {
+        ScriptRunner.executeScript(deployedApplication, deployedApplication.getEnvironment(), hostSet, SCRIPT, LIBRARY);
+    }
+
+    /**
+     * Forgets the engine pools and the cached scripts before each cold run. The pools are only reachable by reflection,
+     * the plugin never drops them.
+     */
+    @State(Scope.Thread)
+    public static class Cold {
+
+        private Map<?, ?> pools;
+
+        @Setup
+        public void findPools() throws ReflectiveOperationException {
+            Field field = ScriptEnginePool.class.getDeclaredField("pools");
+            field.setAccessible(true);
+            pools = (Map<?, ?>) field.get(null);
+        }
+
+        @Setup(Level.Invocation)
+        public void invalidate() {
+            pools.clear();
+            ScriptCache.invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.load;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.jcajce.JcaPEMWriter;
+import org.bouncycastle.openssl.jcajce.JcePEMEncryptorBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Operation;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+import ext.deployit.community.plugin.personalcredentials.contributor.IdentityContributor;
+import ext.deployit.community.plugin.personalcredentials.credentials.FileCredentialProvider;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptEngines;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+/**
+ * Plans a deployment with a parallel connection check for every credentials type and runs the check against
+ * embedded SSH servers, with password or key authentication, and reports the throughput and the p50/p99 latency of
+ * the checks. The Host CIs are spread over the servers. The Overthere transport is stubbed: the hosts connect through
+ * an {@link SshConnector}, a proxy OverthereConnection over an sshj session, instead of the Overthere connection
+ * code of XL Deploy. Sized with the <code>loadTest.servers</code> (default 10),
+ * <code>loadTest.hosts</code> (default 10,100,1000), <code>loadTest.latency</code> (milliseconds per authentication
+ * and per command, default 10) and <code>loadTest.concurrency</code> (default 50) system properties.
+ */
+public class ConnectionCheckLoadTest {
+
+    static final String USERNAME = "deployer";
+    static final String PASSWORD = "secret";
+
+    private static final String PASSPHRASE = "load-secret";
+    private static final String KEY_ID = "loadKey";
+
+    private static final int SERVERS = Integer.getInteger("loadTest.servers", 10);
+    private static final List<Integer> HOSTS = hostCounts(System.getProperty("loadTest.hosts", "10,100,1000"));
+    private static final long LATENCY = Long.getLong("loadTest.latency", 10);
+    private static final int CONCURRENCY = Integer.getInteger("loadTest.concurrency", 50);
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static SshServerFarm farm;
+    private static String privateKeyFile;
+    private static final List<String> report = Collections.synchronizedList(new ArrayList<String>());
+
+    private final PlanningMetrics metrics = PlanningMetrics.getInstance();
+
+    @BeforeClass
+    public static void startServers() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048, new SecureRandom());
+        KeyPair keyPair = generator.generateKeyPair();
+        File keyFile = folder.newFile("id_rsa");
+        JcaPEMWriter writer = new JcaPEMWriter(new FileWriter(keyFile));
+        try {
+            writer.writeObject(keyPair.getPrivate(), new JcePEMEncryptorBuilder("AES-128-CBC").setProvider(new BouncyCastleProvider()).build(PASSPHRASE.toCharArray()));
+        } finally {
+            writer.close();
+        }
+        privateKeyFile = keyFile.getPath();
+        farm = new SshServerFarm(SERVERS, USERNAME, PASSWORD, keyPair.getPublic(), LATENCY);
+        report.add(String.format("%-24s %6s %9s %9s %10s %8s %8s", "credentials type", "hosts", "plan ms", "check ms", "checks/s", "p50 ms", "p99 ms"));
+    }
+
+    @AfterClass
+    public static void stopServers() throws IOException {
+        if (farm != null) {
+            farm.close();
+            System.out.printf("%d SSH server(s), %d ms latency, concurrency %d: %d authentication(s), %d rejected%n", SERVERS, LATENCY, CONCURRENCY,
+                    farm.getAuthentications(), farm.getRejections());
+        }
+        for (String line : report) {
+            System.out.println(line);
+        }
+        PlanningMetrics.getInstance().setEnabled(false);
+        PlanningMetrics.getInstance().reset();
+    }
+
+    @Test
+    public void username() throws Exception {
+        run(CredentialsType.CT_USERNAME, ImmutableMap.<String, Object>of("username", USERNAME, "password", PASSWORD));
+    }
+
+    @Test
+    public void privateKey() throws Exception {
+        run(CredentialsType.CT_PRIVATEKEY, ImmutableMap.<String, Object>of("privateKey", privateKeyFile, "passphrase", PASSPHRASE));
+    }
+
+    @Test
+    public void privateKeySelector() throws Exception {
+        run(CredentialsType.CT_PRIVATEKEY_SELECTOR, ImmutableMap.<String, Object>of("privateKey", KEY_ID, "passphrase", PASSPHRASE));
+    }
+
+    @Test
+    public void customScript() throws Exception {
+        run(CredentialsType.CT_CUSTOM_SCRIPT, ImmutableMap.<String, Object>of("scriptEngine", ScriptEngines.JAVA, "scriptPath", LoadCredentialScript.class.getName()));
+    }
+
+    @Test
+    public void provider() throws Exception {
+        run(CredentialsType.CT_PROVIDER, ImmutableMap.<String, Object>of());
+    }
+
+    private void run(CredentialsType type, Map<String, Object> properties) throws Exception {
+        for (int count : HOSTS) {
+            List<StubHost> hosts = hosts(type, count);
+            StubDeployedApplication deployedApplication = deployedApplication(type, properties, hosts);
+            List<Delta> deltas = new ArrayList<Delta>();
+            for (StubHost host : hosts) {
+                deltas.add(Stubs.delta(Operation.CREATE, null, Stubs.deployed(host.getId() + "/app", host)));
+            }
+
+            metrics.reset();
+            metrics.setEnabled(true);
+            long start = System.nanoTime();
+            List<Step> steps = IdentityContributor.injectPersonalCredentials(Stubs.specification(deployedApplication, deltas));
+            long planned = System.nanoTime();
+            List<String> output = new ArrayList<String>();
+            for (Step step : steps) {
+                assertEquals(type + " on " + count + " host(s): " + output, StepExitCode.SUCCESS, step.execute(Stubs.context(output)));
+            }
+            long checked = System.nanoTime();
+            metrics.setEnabled(false);
+
+            assertEquals(count, metrics.getPhaseCount("CONNECTION_CHECK"));
+            long checkMillis = TimeUnit.NANOSECONDS.toMillis(checked - planned);
+            report.add(String.format("%-24s %6d %9d %9d %10.1f %8.1f %8.1f", type, count, TimeUnit.NANOSECONDS.toMillis(planned - start), checkMillis,
+                    count * 1000.0 / Math.max(1, checkMillis), metrics.getPhasePercentileMillis("CONNECTION_CHECK", 50),
+                    metrics.getPhasePercentileMillis("CONNECTION_CHECK", 99)));
+        }
+    }
+
+    /**
+     * Hosts with unique addresses, so no two of them are taken for the same connection endpoint. The key types do
+     * not set the username, so the hosts have it in the repository.
+     */
+    private static List<StubHost> hosts(CredentialsType type, int count) {
+        boolean keys = type == CredentialsType.CT_PRIVATEKEY || type == CredentialsType.CT_PRIVATEKEY_SELECTOR;
+        List<StubHost> hosts = new ArrayList<StubHost>();
+        for (int i = 0; i < count; i++) {
+            StubHost host = new StubHost("Infrastructure/load/" + type.name().toLowerCase() + "/host-" + i, "host-" + i + "." + type.name().toLowerCase() + ".load")
+                    .withConnector(new SshConnector(farm.port(i % farm.size())));
+            if (keys) {
+                host.setProperty("username", USERNAME);
+            }
+            hosts.add(host);
+        }
+        return hosts;
+    }
+
+    private static StubDeployedApplication deployedApplication(CredentialsType type, Map<String, Object> properties, List<StubHost> hosts) throws IOException {
+        StubEnvironment environment = new StubEnvironment("Environments/load");
+        if (type == CredentialsType.CT_PRIVATEKEY_SELECTOR) {
+            environment.with("privateKeySelectorConfiguration", keySelector());
+        }
+        StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/load/app", environment, type)
+                .with("checkConnection", true).with("checkConnectionParallel", true).with("checkConnectionConcurrency", CONCURRENCY);
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            deployedApplication.with(property.getKey(), property.getValue());
+        }
+        if (type == CredentialsType.CT_PROVIDER) {
+            deployedApplication.with(FileCredentialProvider.CREDENTIALS_FILE_PROPERTY, credentialsFile(hosts));
+        }
+        return deployedApplication;
+    }
+
+    private static PrivateKeySelectorConfiguration keySelector() {
+        return new PrivateKeySelectorConfiguration() {
+            @Override
+            public String getId() {
+                return "Configuration/load-keys";
+            }
+
+            @Override
+            public Map<String, String> getPrivateKeyIds() {
+                return ImmutableMap.of(KEY_ID, privateKeyFile);
+            }
+
+            @Override
+            public List<String> getKeySelectionRules() {
+                return Collections.emptyList();
+            }
+
+            @Override
+            public Map<String, String> getKeyPassphrases() {
+                return Collections.emptyMap();
+            }
+        };
+    }
+
+    private static String credentialsFile(List<StubHost> hosts) throws IOException {
+        File file = folder.newFile();
+        Writer writer = new FileWriter(file);
+        try {
+            for (StubHost host : hosts) {
+                writer.write(host.getId() + ".username=" + USERNAME + "\n");
+                writer.write(host.getId() + ".password=" + PASSWORD + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        return file.getPath();
+    }
+
+    private static List<Integer> hostCounts(String value) {
+        List<Integer> counts = new ArrayList<Integer>();
+        for (String count : Splitter.on(',').trimResults().omitEmptyStrings().split(value)) {
+            counts.add(Integer.valueOf(count));
+        }
+        return counts;
+    }
+}
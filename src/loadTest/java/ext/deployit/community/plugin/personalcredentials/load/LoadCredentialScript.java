@@ -0,0 +1,34 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.load;
+
+import java.util.Set;
+
+import org.slf4j.Logger;
+
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.api.udm.Environment;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.script.CredentialScript;
+
+/**
+ * CT_CUSTOM_SCRIPT credentials of the load test: the load user and password on every host.
+ */
+public class LoadCredentialScript implements CredentialScript {
+
+    @Override
+    public void execute(DeployedApplication deployedApplication, Environment environment, Set<Host> hosts, Logger logger) {
+        for (Host host : hosts) {
+            host.setProperty("username", ConnectionCheckLoadTest.USERNAME);
+            host.setProperty("password", ConnectionCheckLoadTest.PASSWORD);
+        }
+    }
+}
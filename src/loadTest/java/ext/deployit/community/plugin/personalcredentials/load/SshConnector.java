@@ -0,0 +1,119 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.load;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.OverthereExecutionOutputHandler;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import net.schmizz.sshj.DefaultConfig;
+import net.schmizz.sshj.SSHClient;
+import net.schmizz.sshj.connection.channel.direct.Session;
+import net.schmizz.sshj.transport.verification.PromiscuousVerifier;
+
+/**
+ * Connects a stub host to one of the servers of an {@link SshServerFarm} with sshj, authenticating with the private
+ * key file of the host when it has one and with its password otherwise, as Overthere does for an SFTP host. The
+ * address of the host is not used, so many Host CIs can point to the same server.
+ */
+@SuppressWarnings("serial")
+class SshConnector implements StubHost.Connector {
+
+    static final String CHECK_COMMAND = "echo personal-credentials";
+
+    private static final DefaultConfig config = new DefaultConfig();
+
+    private final int port;
+
+    SshConnector(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public OverthereConnection connect(StubHost host) {
+        String username = host.getProperty("username");
+        String privateKeyFile = host.getProperty("privateKeyFile");
+        final SSHClient ssh = new SSHClient(config);
+        ssh.addHostKeyVerifier(new PromiscuousVerifier());
+        try {
+            ssh.connect("127.0.0.1", port);
+            if (!Strings.isNullOrEmpty(privateKeyFile)) {
+                String passphrase = host.getProperty("passphrase");
+                ssh.authPublickey(username, passphrase == null ? ssh.loadKeys(privateKeyFile) : ssh.loadKeys(privateKeyFile, passphrase));
+            } else {
+                ssh.authPassword(username, host.<String>getProperty("password"));
+            }
+        } catch (IOException e) {
+            disconnect(ssh);
+            throw new IllegalStateException(String.format("Cannot connect to %s as %s: %s", host.getId(), username, e.getMessage()), e);
+        }
+        return (OverthereConnection) Proxy.newProxyInstance(SshConnector.class.getClassLoader(), new Class<?>[] { OverthereConnection.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("execute")) {
+                    return execute(ssh, (OverthereExecutionOutputHandler) args[0], (OverthereExecutionOutputHandler) args[1]);
+                } else if (method.getName().equals("close")) {
+                    disconnect(ssh);
+                    return null;
+                } else if (method.getName().equals("toString")) {
+                    return "ssh://127.0.0.1:" + port;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Runs the connection check command; the command line given by the caller is always the check command.
+     */
+    private static int execute(SSHClient ssh, OverthereExecutionOutputHandler stdout, OverthereExecutionOutputHandler stderr) {
+        try {
+            Session session = ssh.startSession();
+            try {
+                Session.Command command = session.exec(CHECK_COMMAND);
+                handle(new String(ByteStreams.toByteArray(command.getInputStream()), StandardCharsets.UTF_8), stdout);
+                handle(new String(ByteStreams.toByteArray(command.getErrorStream()), StandardCharsets.UTF_8), stderr);
+                command.join(30, TimeUnit.SECONDS);
+                Integer exitStatus = command.getExitStatus();
+                return exitStatus == null ? -1 : exitStatus;
+            } finally {
+                session.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot execute " + CHECK_COMMAND + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void handle(String output, OverthereExecutionOutputHandler handler) {
+        if (handler == null) {
+            return;
+        }
+        for (String line : Splitter.on('\n').omitEmptyStrings().split(output)) {
+            handler.handleLine(line);
+        }
+    }
+
+    private static void disconnect(SSHClient ssh) {
+        try {
+            ssh.disconnect();
+        } catch (IOException ignored) {
+        }
+    }
+}
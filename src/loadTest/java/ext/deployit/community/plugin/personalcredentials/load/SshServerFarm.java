@@ -0,0 +1,191 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.load;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.auth.password.PasswordAuthenticator;
+import org.apache.sshd.server.auth.pubkey.PublickeyAuthenticator;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.command.CommandFactory;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.session.ServerSession;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Embedded SSH servers on the loopback interface. They accept one user, with a password or a public key, and run
+ * <code>echo</code> commands. Every authentication and every command is delayed by the given latency, to stand for
+ * the network and the remote host.
+ */
+class SshServerFarm implements Closeable {
+
+    private final String username;
+    private final String password;
+    private final PublicKey publicKey;
+    private final long latencyMillis;
+    private final List<SshServer> servers = new ArrayList<SshServer>();
+    private final ExecutorService commands = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("load-ssh-command-%d").setDaemon(true).build());
+    private final AtomicLong authentications = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+
+    SshServerFarm(int size, String username, String password, PublicKey publicKey, long latencyMillis) throws IOException {
+        this.username = username;
+        this.password = password;
+        this.publicKey = publicKey;
+        this.latencyMillis = latencyMillis;
+        SimpleGeneratorHostKeyProvider hostKeys = new SimpleGeneratorHostKeyProvider();
+        for (int i = 0; i < size; i++) {
+            SshServer server = SshServer.setUpDefaultServer();
+            server.setHost("127.0.0.1");
+            server.setPort(0);
+            server.setKeyPairProvider(hostKeys);
+            server.setPasswordAuthenticator(new PasswordAuthenticator() {
+                @Override
+                public boolean authenticate(String user, String pass, ServerSession session) {
+                    return accept(user, SshServerFarm.this.password.equals(pass));
+                }
+            });
+            server.setPublickeyAuthenticator(new PublickeyAuthenticator() {
+                @Override
+                public boolean authenticate(String user, PublicKey key, ServerSession session) {
+                    return accept(user, Arrays.equals(SshServerFarm.this.publicKey.getEncoded(), key.getEncoded()));
+                }
+            });
+            server.setCommandFactory(new CommandFactory() {
+                @Override
+                public Command createCommand(ChannelSession channel, String command) {
+                    return new EchoCommand(command);
+                }
+            });
+            server.start();
+            servers.add(server);
+        }
+    }
+
+    private boolean accept(String user, boolean secretMatches) {
+        delay();
+        if (username.equals(user) && secretMatches) {
+            authentications.incrementAndGet();
+            return true;
+        }
+        rejections.incrementAndGet();
+        return false;
+    }
+
+    private void delay() {
+        if (latencyMillis > 0) {
+            Uninterruptibles.sleepUninterruptibly(latencyMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    int size() {
+        return servers.size();
+    }
+
+    int port(int server) {
+        return servers.get(server).getPort();
+    }
+
+    long getAuthentications() {
+        return authentications.get();
+    }
+
+    long getRejections() {
+        return rejections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (SshServer server : servers) {
+            server.stop(true);
+        }
+        commands.shutdownNow();
+    }
+
+    /**
+     * Writes the arguments of an <code>echo</code> command, or fails any other command. Runs off the I/O threads of
+     * the server, so the latency does not hold them.
+     */
+    private class EchoCommand implements Command {
+        private final String command;
+        private OutputStream out;
+        private OutputStream err;
+        private ExitCallback callback;
+
+        EchoCommand(String command) {
+            this.command = command;
+        }
+
+        @Override
+        public void setInputStream(InputStream in) {
+        }
+
+        @Override
+        public void setOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void setErrorStream(OutputStream err) {
+            this.err = err;
+        }
+
+        @Override
+        public void setExitCallback(ExitCallback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void start(ChannelSession channel, Environment env) {
+            commands.submit(new Runnable() {
+                @Override
+                public void run() {
+                    delay();
+                    try {
+                        if (command.startsWith("echo ")) {
+                            out.write((command.substring(5) + "\n").getBytes(StandardCharsets.UTF_8));
+                            out.flush();
+                            callback.onExit(0);
+                        } else {
+                            err.write(("unknown command: " + command + "\n").getBytes(StandardCharsets.UTF_8));
+                            err.flush();
+                            callback.onExit(127);
+                        }
+                    } catch (IOException e) {
+                        callback.onExit(1, e.getMessage());
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void destroy(ChannelSession channel) {
+        }
+    }
+}
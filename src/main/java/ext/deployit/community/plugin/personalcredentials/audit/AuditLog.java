@@ -0,0 +1,204 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.audit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Audit channel of the credential injections. Planning threads put one {@link AuditRecord} per host in a lock-free
+ * ring buffer and return; a background thread writes the records in batches as JSON lines to a file that is rotated
+ * by size. Enabled by the <code>xlc.personalcredentials.audit.file</code> system property, tuned with
+ * <code>xlc.personalcredentials.audit.maxFileSize</code> (bytes, default 10 MB),
+ * <code>xlc.personalcredentials.audit.maxFiles</code> (rotated files kept, default 5),
+ * <code>xlc.personalcredentials.audit.bufferSize</code> (records, default 8192) and
+ * <code>xlc.personalcredentials.audit.flushInterval</code> (milliseconds, default 1000).
+ * When the buffer is full, records are dropped and counted rather than blocking planning.
+ */
+public class AuditLog {
+
+    public static final String FILE = System.getProperty("xlc.personalcredentials.audit.file");
+    public static final long MAX_FILE_SIZE = Long.getLong("xlc.personalcredentials.audit.maxFileSize", 10L * 1024 * 1024);
+    public static final int MAX_FILES = Math.max(1, Integer.getInteger("xlc.personalcredentials.audit.maxFiles", 5));
+    public static final int BUFFER_SIZE = Integer.getInteger("xlc.personalcredentials.audit.bufferSize", 8192);
+    public static final long FLUSH_INTERVAL_MILLIS = Long.getLong("xlc.personalcredentials.audit.flushInterval", 1000);
+
+    private static final int BATCH_SIZE = 512;
+
+    private static final AuditRingBuffer buffer = new AuditRingBuffer(BUFFER_SIZE);
+    private static final AtomicLong written = new AtomicLong();
+
+    private static volatile boolean started;
+    private static ScheduledExecutorService writerExecutor;
+    private static Writer writer;
+    private static long fileSize;
+
+    public static boolean isEnabled() {
+        return started;
+    }
+
+    /**
+     * Queues the record for the audit file. Never blocks; does nothing when the audit log is not started.
+     */
+    public static void record(AuditRecord record) {
+        if (started) {
+            buffer.offer(record);
+        }
+    }
+
+    /**
+     * Starts the background writer when <code>xlc.personalcredentials.audit.file</code> is set.
+     */
+    public static synchronized void start() {
+        if (started || FILE == null || FILE.trim().isEmpty()) {
+            return;
+        }
+        writerExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("personal-credentials-audit-%d").setDaemon(true).build());
+        writerExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                stop();
+            }
+        }, "personal-credentials-audit-shutdown"));
+        started = true;
+        logger.info("Writing the credential audit log to {}", FILE);
+    }
+
+    /**
+     * Stops the background writer after writing the queued records.
+     */
+    public static void stop() {
+        ScheduledExecutorService executor;
+        synchronized (AuditLog.class) {
+            if (!started) {
+                return;
+            }
+            started = false;
+            executor = writerExecutor;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain();
+        closeWriter();
+    }
+
+    public static int getQueueDepth() {
+        return buffer.size();
+    }
+
+    public static long getDropped() {
+        return buffer.getDropped();
+    }
+
+    public static long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Writes all queued records. Runs on the writer thread, or on the stopping thread once the writer has stopped.
+     */
+    private static synchronized void drain() {
+        List<AuditRecord> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+        try {
+            while (buffer.drainTo(batch, BATCH_SIZE) > 0) {
+                StringBuilder lines = new StringBuilder(batch.size() * 160);
+                for (AuditRecord record : batch) {
+                    lines.append(record.toJson()).append('\n');
+                }
+                write(lines.toString());
+                written.addAndGet(batch.size());
+                batch.clear();
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot write the credential audit log {}, {} record(s) lost", FILE, batch.size(), e);
+            closeWriter();
+        }
+    }
+
+    private static void write(String lines) throws IOException {
+        byte[] bytes = lines.getBytes(Charsets.UTF_8);
+        if (writer != null && fileSize > 0 && fileSize + bytes.length > MAX_FILE_SIZE) {
+            closeWriter();
+            rotate();
+        }
+        if (writer == null) {
+            File file = new File(FILE);
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create directory " + parent);
+            }
+            fileSize = file.length();
+            writer = new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8);
+        }
+        writer.write(lines);
+        fileSize += bytes.length;
+    }
+
+    /**
+     * Renames <code>file.(n-1)</code> to <code>file.n</code>, down to <code>file</code> to <code>file.1</code>, and
+     * deletes the oldest file.
+     */
+    private static void rotate() {
+        File oldest = new File(FILE + "." + MAX_FILES);
+        if (oldest.exists() && !oldest.delete()) {
+            logger.warn("Cannot delete the rotated audit log {}", oldest);
+        }
+        for (int i = MAX_FILES - 1; i >= 0; i--) {
+            File from = new File(i == 0 ? FILE : FILE + "." + i);
+            if (from.exists() && !from.renameTo(new File(FILE + "." + (i + 1)))) {
+                logger.warn("Cannot rotate the audit log {}", from);
+            }
+        }
+        fileSize = 0;
+    }
+
+    private static synchronized void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.warn("Cannot close the credential audit log {}", FILE, e);
+        }
+        writer = null;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditLog.class);
+}
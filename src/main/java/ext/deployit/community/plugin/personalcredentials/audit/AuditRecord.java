@@ -0,0 +1,87 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.audit;
+
+/**
+ * One credential injection of one host, without any secret: which deployed application, which host, which credentials
+ * type and where the credentials came from.
+ */
+public class AuditRecord {
+
+    private final long timestamp;
+    private final String deployedApplicationId;
+    private final String hostId;
+    private final String credentialsType;
+    private final String source;
+    private final long durationMicros;
+    private final boolean checkEmitted;
+
+    public AuditRecord(String deployedApplicationId, String hostId, String credentialsType, String source, long durationMicros, boolean checkEmitted) {
+        this.timestamp = System.currentTimeMillis();
+        this.deployedApplicationId = deployedApplicationId;
+        this.hostId = hostId;
+        this.credentialsType = credentialsType;
+        this.source = source;
+        this.durationMicros = durationMicros;
+        this.checkEmitted = checkEmitted;
+    }
+
+    public String getDeployedApplicationId() {
+        return deployedApplicationId;
+    }
+
+    public String getHostId() {
+        return hostId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return the record as a single line JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(160).append('{');
+        json.append("\"timestamp\":").append(timestamp);
+        appendString(json.append(",\"deployedApplication\":"), deployedApplicationId);
+        appendString(json.append(",\"host\":"), hostId);
+        appendString(json.append(",\"credentialsType\":"), credentialsType);
+        appendString(json.append(",\"source\":"), source);
+        json.append(",\"durationMicros\":").append(durationMicros);
+        json.append(",\"checkEmitted\":").append(checkEmitted);
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':  json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
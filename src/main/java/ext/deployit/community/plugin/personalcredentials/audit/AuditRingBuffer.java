@@ -0,0 +1,83 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.audit;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free buffer with many producers and a single consumer. A producer claims a slot with a CAS on the
+ * tail and publishes its record in the slot; when the buffer is full the record is dropped and counted, so producers
+ * never wait. The consumer takes the published records in order and frees their slots.
+ */
+class AuditRingBuffer {
+
+    private final AtomicReferenceArray<AuditRecord> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<AuditRecord>(size);
+        this.mask = size - 1;
+    }
+
+    boolean offer(AuditRecord record) {
+        while (true) {
+            long current = tail.get();
+            if (current - head.get() >= slots.length()) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (tail.compareAndSet(current, current + 1)) {
+                slots.lazySet((int) current & mask, record);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves up to <code>max</code> published records to <code>batch</code>. Only called by the consumer thread.
+     *
+     * @return the number of records moved
+     */
+    int drainTo(List<AuditRecord> batch, int max) {
+        long current = head.get();
+        int count = 0;
+        while (count < max && current < tail.get()) {
+            int index = (int) current & mask;
+            AuditRecord record = slots.get(index);
+            if (record == null) {
+                // slot claimed, record not published yet
+                break;
+            }
+            slots.lazySet(index, null);
+            batch.add(record);
+            current++;
+            count++;
+        }
+        head.lazySet(current);
+        return count;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+}
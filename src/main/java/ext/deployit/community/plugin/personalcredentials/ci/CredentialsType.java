@@ -13,5 +13,6 @@ public enum CredentialsType {
 		CT_USERNAME,
 		CT_PRIVATEKEY,
 		CT_PRIVATEKEY_SELECTOR,
-		CT_CUSTOM_SCRIPT
+		CT_CUSTOM_SCRIPT,
+		CT_PROVIDER
 }
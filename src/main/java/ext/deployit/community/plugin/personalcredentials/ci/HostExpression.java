@@ -0,0 +1,113 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.ci;
+
+import static java.lang.String.format;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.Parameters;
+
+/**
+ * A parsed <code>${start.property.property}</code> host expression of a control task. Expressions are parsed once
+ * per CI type and cached, resolving one only walks the property path.
+ */
+class HostExpression {
+
+    private static final Pattern EXPRESSION_PATTERN = Pattern.compile("^\\$\\{([\\w.]+)\\}$");
+
+    private static final ConcurrentMap<String, HostExpression> expressions = new ConcurrentHashMap<String, HostExpression>();
+
+    private final boolean fromParams;
+    private final List<String> path;
+
+    private HostExpression(boolean fromParams, List<String> path) {
+        this.fromParams = fromParams;
+        this.path = path;
+    }
+
+    /**
+     * @return the parsed expression, or null when the expression does not have the <code>${..}</code> format
+     */
+    static HostExpression parse(Type type, String expression) {
+        String key = type + "\u0000" + expression;
+        HostExpression hostExpression = expressions.get(key);
+        if (hostExpression == null) {
+            Matcher matcher = EXPRESSION_PATTERN.matcher(expression);
+            if (!matcher.matches()) {
+                return null;
+            }
+            List<String> names = Arrays.asList(matcher.group(1).split("[.]"));
+            String startingCiName = names.get(0);
+            if (startingCiName.equals("thisCi") || startingCiName.equals("container") || startingCiName.equals("deployed")) {
+                hostExpression = new HostExpression(false, names.subList(1, names.size()));
+            } else if (startingCiName.equals("params")) {
+                hostExpression = new HostExpression(true, names.subList(1, names.size()));
+            } else {
+                hostExpression = new HostExpression(false, names);
+            }
+            expressions.putIfAbsent(key, hostExpression);
+        }
+        return hostExpression;
+    }
+
+    /**
+     * Resolves the expression to a single configuration item.
+     */
+    ConfigurationItem resolve(ConfigurationItem item, Parameters params) {
+        Object value = walk(item, params, false);
+        return (ConfigurationItem) value;
+    }
+
+    /**
+     * Resolves the expression to configuration items; the last property of the path may be a collection of CIs.
+     */
+    Collection<?> resolveAll(ConfigurationItem item, Parameters params) {
+        Object value = walk(item, params, true);
+        if (value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+        return Collections.singleton(value);
+    }
+
+    private Object walk(ConfigurationItem item, Parameters params, boolean allowCollection) {
+        ConfigurationItem current = fromParams ? params : item;
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("Expression does not reference a property.");
+        }
+        for (int i = 0; i < path.size(); i++) {
+            String propName = path.get(i);
+            if (!current.hasProperty(propName)) {
+                throw new IllegalArgumentException(format("Property [%s] not defined for type [%s].", propName, current.getType()));
+            }
+            Object nextItem = current.getProperty(propName);
+            boolean last = i == path.size() - 1;
+            if (nextItem == null) {
+                throw new IllegalArgumentException(format("Property [%s.%s] is null.", current.getType(), propName));
+            } else if (nextItem instanceof ConfigurationItem) {
+                current = (ConfigurationItem) nextItem;
+            } else if (last && allowCollection && nextItem instanceof Collection) {
+                return nextItem;
+            } else {
+                throw new IllegalArgumentException(format("Property [%s.%s] kind invalid. Expecting kind [CI] but was [%s].", current.getType(), propName, current.getType().getDescriptor().getPropertyDescriptor(propName).getKind()));
+            }
+        }
+        return current;
+    }
+}
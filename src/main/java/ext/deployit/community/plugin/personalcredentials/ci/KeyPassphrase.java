@@ -0,0 +1,38 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.ci;
+
+import com.xebialabs.deployit.plugin.api.udm.Metadata;
+import com.xebialabs.deployit.plugin.api.udm.Property;
+import com.xebialabs.deployit.plugin.api.udm.base.BaseConfigurationItem;
+
+@Metadata(root = Metadata.ConfigurationItemRoot.NESTED, description = "Passphrase of a private key id of a PrivateKeySelectorConfiguration (personal-credentials)")
+public class KeyPassphrase extends BaseConfigurationItem {
+
+	private static final long serialVersionUID = -3468205771937400552L;
+
+	@Property(asContainment = true, description = "The configuration holding the private key")
+	private PrivateKeySelectorConfiguration configuration;
+
+	@Property(description = "Id of the private key in the privateKeyIds map of the configuration", label="Private key id")
+	private String keyId;
+
+	@Property(description = "Passphrase of the private key file", password=true, label="Passphrase")
+	private String passphrase;
+
+	public String getKeyId(){
+		return keyId;
+	}
+
+	public String getPassphrase(){
+		return passphrase;
+	}
+
+}
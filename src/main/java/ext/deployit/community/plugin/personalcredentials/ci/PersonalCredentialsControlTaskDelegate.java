@@ -19,9 +19,14 @@ import com.xebialabs.deployit.plugin.generic.step.ScriptExecutionStep;
 import com.xebialabs.deployit.plugin.overthere.HostContainer;
 import com.xebialabs.overthere.OperatingSystemFamily;
 
+import ext.deployit.community.plugin.personalcredentials.credentials.CiCopies;
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+import ext.deployit.community.plugin.personalcredentials.step.ParallelStepsStep;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -35,7 +40,8 @@ public class PersonalCredentialsControlTaskDelegate {
 
     @Delegate(name = "pcShellScript")
     public static List<Step> executedPCScriptDelegate(ConfigurationItem item, String name, Map<String, String> args, Parameters params) {
-        HostContainer targetHost = determineHost(item, name, args.get("host"), params);
+        // the credentials are set on a copy of the target, the Host CI of the repository may be shared with other tasks
+        HostContainer targetHost = CiCopies.copy(determineHost(item, name, args.get("host"), params));
         if (targetHost.getHost().getOs().equals(OperatingSystemFamily.UNIX)) {
             if (params.hasProperty("unixUsername")) {
                 targetHost.getHost().setProperty("username", params.getProperty("unixUsername"));
@@ -61,6 +67,88 @@ public class PersonalCredentialsControlTaskDelegate {
         return doShellScriptDelegate(item, name, args, params, targetHost);
     }
 
+    /**
+     * Runs the control task script on many hosts at once. The targets are given by the <code>hosts</code> argument, an
+     * expression resolving to a host or a collection of CIs (e.g. <code>${thisCi.members}</code> on an environment);
+     * without it, all host members of an environment, or the host of the CI, are targeted. The credentials of the
+     * parameters are resolved once and applied to a copy of every host made for this task. With <code>parallel="true"</code> the scripts run in a
+     * single step on at most <code>concurrency</code> hosts at a time.
+     */
+    @Delegate(name = "pcShellScriptBatch")
+    public static List<Step> executedPCScriptBatchDelegate(ConfigurationItem item, String name, Map<String, String> args, Parameters params) {
+        // the credentials are set on copies of the targets, the Host CIs of the repository may be shared with other tasks
+        List<HostContainer> targetHosts = CiCopies.copy(newArrayList(determineHosts(item, name, args.get("hosts"), params)));
+        Map<OperatingSystemFamily, HostCredentials> credentials = resolveCredentials(params);
+        String script = determineScript(item, name, args);
+
+        List<Step> steps = newArrayList();
+        for (HostContainer targetHost : targetHosts) {
+            HostCredentials hostCredentials = credentials.get(targetHost.getHost().getOs());
+            if (hostCredentials != null) {
+                hostCredentials.applyTo(targetHost.getHost());
+            }
+            Map<String, Object> thisVarContext = createContext(item, params, targetHost);
+            steps.add(createStep(script, targetHost, args.get("classpathResources"), args.get("templateClasspathResources"), thisVarContext));
+        }
+        logger.debug("Control task {}.{} targets {} host(s)", item.getType(), name, steps.size());
+        if (Boolean.parseBoolean(args.get("parallel")) && steps.size() > 1) {
+            int concurrency = isNullOrEmpty(args.get("concurrency")) ? ParallelStepsStep.DEFAULT_CONCURRENCY : Integer.parseInt(args.get("concurrency"));
+            return Collections.<Step>singletonList(new ParallelStepsStep(format("Executing %s on %d host(s)", script, steps.size()), steps, concurrency));
+        }
+        return steps;
+    }
+
+    private static Map<OperatingSystemFamily, HostCredentials> resolveCredentials(Parameters params) {
+        Map<OperatingSystemFamily, HostCredentials> credentials = new EnumMap<OperatingSystemFamily, HostCredentials>(OperatingSystemFamily.class);
+        if (params == null) {
+            return credentials;
+        }
+        credentials.put(OperatingSystemFamily.UNIX, new HostCredentials(
+                getStringParameter(params, "unixUsername"), getStringParameter(params, "unixPassword"),
+                getStringParameter(params, "privateKey"), getStringParameter(params, "passphrase")));
+        credentials.put(OperatingSystemFamily.WINDOWS, new HostCredentials(
+                getStringParameter(params, "windowsUsername"), getStringParameter(params, "windowsPassword"), null, null));
+        return credentials;
+    }
+
+    private static String getStringParameter(Parameters params, String propertyName) {
+        return params.hasProperty(propertyName) ? params.<String>getProperty(propertyName) : null;
+    }
+
+    private static Collection<HostContainer> determineHosts(ConfigurationItem item, String name, String hostsExpression, Parameters params) {
+        Collection<?> candidates;
+        if (hostsExpression == null) {
+            if (item instanceof Environment) {
+                candidates = ((Environment) item).getMembers();
+            } else {
+                candidates = Collections.singleton(determineHost(item, name, null, params));
+            }
+        } else {
+            HostExpression expression = HostExpression.parse(item.getType(), hostsExpression);
+            if (expression == null) {
+                throw new IllegalArgumentException(format("Argument %s.%s.hosts has an invalid expression format. Expected to be [${..}] but was [%s].", item.getType(), name, hostsExpression));
+            }
+            try {
+                candidates = expression.resolveAll(item, params);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(format("Cannot resolve expression [%s] for argument [%s.%s.hosts]. %s ", hostsExpression, item.getType(), name, e.getMessage()));
+            }
+        }
+        Map<String, HostContainer> hosts = new LinkedHashMap<String, HostContainer>();
+        for (Object candidate : candidates) {
+            if (candidate instanceof HostContainer) {
+                HostContainer hostContainer = (HostContainer) candidate;
+                if (!hosts.containsKey(hostContainer.getHost().getId())) {
+                    hosts.put(hostContainer.getHost().getId(), hostContainer);
+                }
+            }
+        }
+        if (hosts.isEmpty()) {
+            throw new IllegalStateException(format("No target host found for method [%s.%s].", item.getType(), name));
+        }
+        return hosts.values();
+    }
+
     private static List<Step> doShellScriptDelegate(ConfigurationItem item, String name, Map<String, String> args, Parameters params, HostContainer targetHost) {
         Map<String, Object> thisVarContext = createContext(item, params, targetHost);
         String script = determineScript(item, name, args);
@@ -134,24 +222,10 @@ public class PersonalCredentialsControlTaskDelegate {
             }
         }
 
-        Pattern expressionPattern = Pattern.compile("^\\$\\{([\\w.]+)\\}$");
-        Matcher matcher = expressionPattern.matcher(hostExpression);
-        if (matcher.matches()) {
-            Deque<String> pathStack = new ArrayDeque<String>(Arrays.asList(matcher.group(1).split("[.]")));
-            String startingCiName = pathStack.pop();
-            ConfigurationItem startingCi = null;
-
-            if (startingCiName.equals("thisCi") || startingCiName.equals("container") || startingCiName.equals("deployed")) {
-                startingCi = item;
-            } else if (startingCiName.equals("params")) {
-                startingCi = params;
-            } else {
-                startingCi = item;
-                pathStack.addFirst(startingCiName);
-            }
-
+        HostExpression expression = HostExpression.parse(item.getType(), hostExpression);
+        if (expression != null) {
             try {
-                ConfigurationItem potentialHostCi = getProperty(startingCi, pathStack);
+                ConfigurationItem potentialHostCi = expression.resolve(item, params);
                 if (potentialHostCi instanceof HostContainer) {
                     return (HostContainer) potentialHostCi;
                 } else {
@@ -166,24 +240,5 @@ public class PersonalCredentialsControlTaskDelegate {
         throw new IllegalArgumentException(format("Argument %s.%s.host has an invalid expression format. Expected to be [${..}] but was [%s].", item.getType(),name,hostExpression));
     }
 
-    private static ConfigurationItem getProperty(ConfigurationItem item, Deque<String> pathStack) {
-        String propName = pathStack.pop();
-        if (item.hasProperty(propName)) {
-            Object nextItem = item.getProperty(propName);
-            if (nextItem == null) {
-                throw new IllegalArgumentException(format("Property [%.s.%s] is null.", item.getType(), propName));
-            } else if (nextItem instanceof ConfigurationItem) {
-                if (pathStack.isEmpty()) {
-                    return (ConfigurationItem) nextItem;
-                } else {
-                    return getProperty((ConfigurationItem) nextItem, pathStack);
-                }
-            } else {
-                throw new IllegalArgumentException(format("Property [%s.%s] kind invalid. Expecting kind [CI] but was [%s].", item.getType(), propName, item.getType().getDescriptor().getPropertyDescriptor(propName).getKind()));
-            }
-        } else {
-            throw new IllegalArgumentException(format("Property [%s] not defined for type [%s].", propName, item.getType()));
-        }
-
-    }
+    protected static final Logger logger = LoggerFactory.getLogger(PersonalCredentialsControlTaskDelegate.class);
 }
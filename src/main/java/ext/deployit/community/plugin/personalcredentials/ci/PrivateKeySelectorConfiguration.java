@@ -9,8 +9,12 @@
  */
 package ext.deployit.community.plugin.personalcredentials.ci;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.xebialabs.deployit.plugin.api.udm.Metadata;
 import com.xebialabs.deployit.plugin.api.udm.Property;
@@ -24,8 +28,32 @@ public class PrivateKeySelectorConfiguration extends BaseConfigurationItem {
 	@Property(description = "Map a user-defined id with a private key file path on XLD server", required=false, label="Private keys ids and files")
 	private Map<String, String> privateKeyIds = new HashMap<String, String>();
 
+	@Property(description = "Ordered rules selecting a private key id per host, the first matching rule wins. Format: <id|address|tag>:<glob or /regex/>=<private key id>, e.g. id:Infrastructure/dmz/*=dmzKey", required=false, label="Key selection rules")
+	private List<String> keySelectionRules = new ArrayList<String>();
+
+	// child CIs rather than a map, so each passphrase is a password property: encrypted in the repository and masked
+	@Property(description = "Passphrases of the private key ids. Keys selected by a rule without a passphrase only get the passphrase of the deployed application when they are its privateKey", required=false, asContainment=true, label="Passphrases per private key id")
+	private Set<KeyPassphrase> keyPassphrases = new HashSet<KeyPassphrase>();
+
 	public Map<String, String> getPrivateKeyIds(){
 		return privateKeyIds;
 	}
+
+	public List<String> getKeySelectionRules(){
+		return keySelectionRules;
+	}
+
+	/**
+	 * @return the passphrases keyed by private key id
+	 */
+	public Map<String, String> getKeyPassphrases(){
+		Map<String, String> passphrases = new HashMap<String, String>();
+		if (keyPassphrases != null) {
+			for (KeyPassphrase keyPassphrase : keyPassphrases) {
+				passphrases.put(keyPassphrase.getKeyId(), keyPassphrase.getPassphrase());
+			}
+		}
+		return passphrases;
+	}
 	
 }
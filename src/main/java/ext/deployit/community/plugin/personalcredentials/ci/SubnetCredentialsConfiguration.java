@@ -0,0 +1,38 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.ci;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.xebialabs.deployit.plugin.api.udm.Metadata;
+import com.xebialabs.deployit.plugin.api.udm.Property;
+import com.xebialabs.deployit.plugin.api.udm.base.BaseConfigurationItem;
+
+@Metadata(root = Metadata.ConfigurationItemRoot.CONFIGURATION, description = "Credential sets per subnet used in username mode (personal-credentials)")
+public class SubnetCredentialsConfiguration extends BaseConfigurationItem {
+
+	private static final long serialVersionUID = -2071468302906316713L;
+
+	@Property(description = "Map a CIDR block, optionally followed by @UNIX or @WINDOWS, with a username, e.g. 10.1.0.0/16@UNIX", required=false, label="Usernames per subnet")
+	private Map<String, String> usernames = new HashMap<String, String>();
+
+	@Property(description = "Map the same CIDR blocks with a password", required=false, password=true, label="Passwords per subnet")
+	private Map<String, String> passwords = new HashMap<String, String>();
+
+	public Map<String, String> getUsernames(){
+		return usernames;
+	}
+
+	public Map<String, String> getPasswords(){
+		return passwords;
+	}
+
+}
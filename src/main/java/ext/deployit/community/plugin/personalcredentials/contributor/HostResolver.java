@@ -0,0 +1,126 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableSet;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyKind;
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.Deployed;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.deployit.plugin.overthere.HostContainer;
+
+/**
+ * Resolves the hosts targeted by the deltas of a deployment.
+ * For each container type the property descriptors that may lead to a host (a host reference or a containment parent)
+ * are computed once and cached, so resolving a container only walks those properties.
+ */
+class HostResolver {
+
+    private static final ConcurrentMap<Type, List<PropertyDescriptor>> resolutionPlans = new ConcurrentHashMap<Type, List<PropertyDescriptor>>();
+
+    private final Map<ConfigurationItem, Host> resolved = new IdentityHashMap<ConfigurationItem, Host>();
+
+    /**
+     * Collects the hosts of the deployed and previous sides of the deltas in a single pass; the hosts of the
+     * deployed side come first.
+     */
+    static Set<Host> resolveHosts(List<Delta> deltas) {
+        HostResolver resolver = new HostResolver();
+        List<Host> deployedHosts = newArrayList();
+        List<Host> previousHosts = newArrayList();
+        for (Delta delta : deltas) {
+            addIfNotNull(deployedHosts, resolver.toHost(delta.getDeployed()));
+            addIfNotNull(previousHosts, resolver.toHost(delta.getPrevious()));
+        }
+        return ImmutableSet.<Host>builder().addAll(deployedHosts).addAll(previousHosts).build();
+    }
+
+    Host toHost(Deployed<?, ?> deployed) {
+        if (deployed == null) {
+            return null;
+        }
+        return toHost(deployed.getContainer());
+    }
+
+    /**
+     * Resolves the host of a container, remembering the result for the lifetime of this resolver as most deltas share their container.
+     */
+    Host toHost(final ConfigurationItem item) {
+        if (item == null) {
+            return null;
+        }
+        if (resolved.containsKey(item)) {
+            return resolved.get(item);
+        }
+        Host host = walk(item);
+        resolved.put(item, host);
+        return host;
+    }
+
+    private Host walk(final ConfigurationItem item) {
+        if (item instanceof Host) {
+            return (Host) item;
+        }
+        if (item instanceof HostContainer) {
+            HostContainer hostContainer = (HostContainer) item;
+            return hostContainer.getHost();
+        }
+        for (PropertyDescriptor propertyDescriptor : resolutionPlan(item.getType())) {
+            final Host host = toHost((ConfigurationItem) propertyDescriptor.get(item));
+            if (host != null)
+                return host;
+        }
+        return null;
+    }
+
+    static List<PropertyDescriptor> resolutionPlan(Type type) {
+        List<PropertyDescriptor> plan = resolutionPlans.get(type);
+        if (plan == null) {
+            plan = computeResolutionPlan(type);
+            resolutionPlans.putIfAbsent(type, plan);
+        }
+        return plan;
+    }
+
+    private static List<PropertyDescriptor> computeResolutionPlan(Type type) {
+        final Type hostType = Type.valueOf(Host.class);
+        final Collection<PropertyDescriptor> propertyDescriptors = type.getDescriptor().getPropertyDescriptors();
+        List<PropertyDescriptor> plan = newArrayList();
+        for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
+            if (propertyDescriptor.getReferencedType() == null || propertyDescriptor.getKind() != PropertyKind.CI)
+                continue;
+            if (propertyDescriptor.getReferencedType().instanceOf(hostType)
+                    || propertyDescriptor.isAsContainment()) {
+                plan.add(propertyDescriptor);
+            }
+        }
+        return Collections.unmodifiableList(plan);
+    }
+
+    private static void addIfNotNull(List<Host> hosts, Host host) {
+        if (host != null) {
+            hosts.add(host);
+        }
+    }
+}
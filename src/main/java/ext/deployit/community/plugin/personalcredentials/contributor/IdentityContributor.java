@@ -9,23 +9,27 @@
  */
 package ext.deployit.community.plugin.personalcredentials.contributor;
 
-import static com.google.common.base.Predicates.notNull;
-import static com.google.common.collect.Iterables.concat;
-import static com.google.common.collect.Iterables.filter;
-import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newLinkedHashMap;
 import static java.lang.String.format;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
 import com.xebialabs.deployit.engine.spi.exception.DeployitException;
@@ -34,22 +38,45 @@ import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
 import com.xebialabs.deployit.plugin.api.deployment.specification.DeltaSpecification;
 import com.xebialabs.deployit.plugin.api.flow.Step;
 import com.xebialabs.deployit.plugin.api.reflect.Descriptor;
-import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
-import com.xebialabs.deployit.plugin.api.reflect.Type;
 import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
 import com.xebialabs.deployit.plugin.api.udm.Deployed;
 import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
 import com.xebialabs.deployit.plugin.api.udm.Environment;
 import com.xebialabs.deployit.plugin.overthere.Host;
-import com.xebialabs.deployit.plugin.overthere.HostContainer;
 import com.xebialabs.deployit.plugin.overthere.step.CheckCommandExecutionStep;
 
+import ext.deployit.community.plugin.personalcredentials.audit.AuditLog;
+import ext.deployit.community.plugin.personalcredentials.audit.AuditRecord;
 import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
 import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+import ext.deployit.community.plugin.personalcredentials.ci.SubnetCredentialsConfiguration;
+import ext.deployit.community.plugin.personalcredentials.credentials.CiCopies;
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialOverlay;
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialProvider;
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialProviders;
+import ext.deployit.community.plugin.personalcredentials.credentials.CurrentUser;
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+import ext.deployit.community.plugin.personalcredentials.credentials.SubnetCredentials;
+import ext.deployit.community.plugin.personalcredentials.keys.KeySelectionRules;
+import ext.deployit.community.plugin.personalcredentials.keys.PrivateKeyStore;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Counter;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptEngines;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptResultCache;
 import ext.deployit.community.plugin.personalcredentials.script.ScriptRunner;
+import ext.deployit.community.plugin.personalcredentials.step.CachingCheckCommandExecutionStep;
+import ext.deployit.community.plugin.personalcredentials.step.ConnectionCheckCache;
+import ext.deployit.community.plugin.personalcredentials.step.ConnectionEndpoint;
+import ext.deployit.community.plugin.personalcredentials.step.ParallelCheckConnectionStep;
+import ext.deployit.community.plugin.personalcredentials.step.ResolveCredentialsStep;
 
 public class IdentityContributor {
 
+    static final int DEFAULT_SCRIPT_CONCURRENCY = 4;
+    static final int DEFAULT_PROVIDER_TIMEOUT_SECONDS = 60;
+    static final int DEFAULT_SCRIPT_TIMEOUT_SECONDS = 300;
+
 	@PrePlanProcessor
     static public List<Step> injectPersonalCredentials(DeltaSpecification specification) {
     	logger.trace("injectPersonalCredentials()");
@@ -62,27 +89,146 @@ public class IdentityContributor {
         if (!override)
             return null;
 
-        final Set<Host> hosts = ImmutableSet.<Host>builder()
-                .addAll(filter(transform(deltas, DEPLOYED_TO_HOST), notNull()))
-                .addAll(filter(transform(deltas, PREVIOUS_TO_HOST), notNull()))
-                .build();
+        final long start = System.nanoTime();
+        isolateContainers(deltas);
+        final Set<Host> hosts = HostResolver.resolveHosts(deltas);
+        final long resolved = System.nanoTime();
+        PlanningMetrics.recordNanos(Phase.HOST_RESOLUTION, resolved - start);
 
         logger.debug("Hosts {}", hosts);
         
+        if (getBooleanProperty(deployedApplication, "resolveCredentialsLazily", false)) {
+            PlanningMetrics.recordNanos(Phase.PLANNING, System.nanoTime() - start);
+            logger.debug("Deferring the credentials of {} host(s) from {} delta(s) to the execution of the plan", hosts.size(), deltas.size());
+            return newArrayList((Step) new ResolveCredentialsStep(hosts, deployedApplication, CurrentUser.getName()));
+        }
+
+        List<Step> steps = injectCredentials(hosts, deployedApplication);
+        final long injected = System.nanoTime();
+        PlanningMetrics.recordNanos(Phase.PLANNING, injected - start);
+        logger.debug("Planned credentials of {} host(s) from {} delta(s): resolve {} ms, inject {} ms",
+                hosts.size(), deltas.size(),
+                TimeUnit.NANOSECONDS.toMillis(resolved - start), TimeUnit.NANOSECONDS.toMillis(injected - resolved));
+        return steps;
+    }
+
+    /**
+     * Resolves the credentials of the hosts with the credentials type of the deployed application for the current
+     * user and sets them on the hosts, while planning.
+     *
+     * @return the connection check steps of the hosts, or null for an unknown credentials type
+     */
+    public static List<Step> injectCredentials(Set<Host> hosts, final DeployedApplication deployedApplication) {
+        return injectCredentials(hosts, deployedApplication, CurrentUser.getName(), Phase.CREDENTIAL_INJECTION);
+    }
+
+    /**
+     * Resolves the credentials of the hosts with the credentials type of the deployed application and sets them on
+     * the hosts. The {@link ResolveCredentialsStep} calls it when the resolution is deferred to the execution of the
+     * plan, where the deploying user is no longer the current user.
+     *
+     * @param username the user who planned the deployment, or null when unknown
+     * @param phase the phase the resolution time is recorded under
+     * @return the connection check steps of the hosts, or null for an unknown credentials type
+     */
+    public static List<Step> injectCredentials(Set<Host> hosts, final DeployedApplication deployedApplication, String username, Phase phase) {
+        final long start = System.nanoTime();
         CredentialsType  credentialType = deployedApplication.<CredentialsType>getProperty("credentialsType");
         logger.debug("CredentialsType {}", credentialType);
         
+        final String memoUser = InjectionMemo.isEnabled() ? username : null;
+        final String fingerprint = memoUser == null ? null : InjectionMemo.fingerprint(memoUser, deployedApplication, hosts);
+        if (fingerprint != null && InjectionMemo.apply(fingerprint, hosts)) {
+            PlanningMetrics.increment(Counter.INJECTION_MEMO_HITS, 1);
+            List<Step> steps = checkConnectionSteps(hosts, deployedApplication);
+            audit(hosts, deployedApplication, credentialType, "memo", System.nanoTime() - start, steps);
+            return steps;
+        }
+
+        List<Step> steps;
         switch (credentialType){
-        	case CT_USERNAME            : return injectUsernames(hosts, deployedApplication); 	
-        	case CT_PRIVATEKEY          : return injectSshKeys(hosts, deployedApplication, false);
-        	case CT_PRIVATEKEY_SELECTOR : return injectSshKeys(hosts, deployedApplication, true);
-        	case CT_CUSTOM_SCRIPT       : return executeCustomScript(hosts, deployedApplication); 
+        	case CT_USERNAME            : steps = injectUsernames(hosts, deployedApplication); break;
+        	case CT_PRIVATEKEY          : steps = injectSshKeys(hosts, deployedApplication, false); break;
+        	case CT_PRIVATEKEY_SELECTOR : steps = injectSshKeys(hosts, deployedApplication, true); break;
+        	case CT_CUSTOM_SCRIPT       : steps = executeCustomScript(hosts, deployedApplication, username); break;
+        	case CT_PROVIDER            : steps = injectProviderCredentials(hosts, deployedApplication); break;
         	default                     : return null;
         }	
-        	
+        if (fingerprint != null) {
+            InjectionMemo.put(fingerprint, hosts);
+        }
+        final long injected = System.nanoTime();
+        PlanningMetrics.recordNanos(phase, injected - start);
+        PlanningMetrics.increment(Counter.HOSTS_PROCESSED, hosts.size());
+        PlanningMetrics.increment(Counter.CHECK_STEPS_EMITTED, steps == null ? 0 : steps.size());
+        audit(hosts, deployedApplication, credentialType, auditSource(credentialType, deployedApplication), injected - start, steps);
+        logger.debug("Injected {} credentials of {} host(s) in {} ms", credentialType, hosts.size(), TimeUnit.NANOSECONDS.toMillis(injected - start));
+        return steps;
     }
-    
-    protected static List<Step> executeCustomScript(Set<Host> hosts, final DeployedApplication deployedApplication){
+
+    /**
+     * Points the deployeds of the deltas to copies of their containers, so the credentials of this plan are set on
+     * copies referenced by the steps of the plan only, and never on the container and host CIs read from the
+     * repository. The plan fails when the containers cannot be copied.
+     */
+    private static void isolateContainers(List<Delta> deltas) {
+        List<Deployed<?, ?>> deployeds = newArrayList();
+        Map<ConfigurationItem, Integer> indexes = new IdentityHashMap<ConfigurationItem, Integer>();
+        List<ConfigurationItem> containers = newArrayList();
+        for (Delta delta : deltas) {
+            for (Deployed<?, ?> deployed : Arrays.<Deployed<?, ?>>asList(delta.getDeployed(), delta.getPrevious())) {
+                if (deployed == null || deployed.getContainer() == null) {
+                    continue;
+                }
+                deployeds.add(deployed);
+                if (!indexes.containsKey(deployed.getContainer())) {
+                    indexes.put(deployed.getContainer(), containers.size());
+                    containers.add(deployed.getContainer());
+                }
+            }
+        }
+        List<ConfigurationItem> copies = CiCopies.copy(containers);
+        for (Deployed<?, ?> deployed : deployeds) {
+            deployed.setProperty("container", copies.get(indexes.get(deployed.getContainer())));
+        }
+        logger.debug("Copied {} container(s) of {} deployed(s) for the plan", containers.size(), deployeds.size());
+    }
+
+    /**
+     * Queues one audit record per host. The injection time of the deployment is spread evenly over its hosts.
+     */
+    private static void audit(Set<Host> hosts, final DeployedApplication deployedApplication, CredentialsType credentialType, String source, long injectionNanos, List<Step> steps) {
+        if (!AuditLog.isEnabled() || hosts.isEmpty()) {
+            return;
+        }
+        long durationMicros = TimeUnit.NANOSECONDS.toMicros(injectionNanos) / hosts.size();
+        boolean checkEmitted = steps != null && !steps.isEmpty();
+        for (Host host : hosts) {
+            AuditLog.record(new AuditRecord(deployedApplication.getId(), host.getId(), String.valueOf(credentialType), source, durationMicros, checkEmitted));
+        }
+    }
+
+    private static String auditSource(CredentialsType credentialType, final DeployedApplication deployedApplication) {
+        switch (credentialType) {
+            case CT_PRIVATEKEY_SELECTOR : return "keySelector";
+            case CT_CUSTOM_SCRIPT       : return "script:" + deployedApplication.getProperty("scriptPath");
+            case CT_PROVIDER            :
+                if (deployedApplication.hasProperty("credentialProvider") && !Strings.isNullOrEmpty(deployedApplication.<String>getProperty("credentialProvider"))) {
+                    return "provider:" + deployedApplication.getProperty("credentialProvider");
+                }
+                return "provider:" + CredentialProviders.DEFAULT_PROVIDER;
+            default                     : return "deployedApplication";
+        }
+    }
+
+    /**
+     * Forgets the credentials memoized for re-plans, so the next plans resolve them again.
+     */
+    public static void clearInjectionMemo() {
+        InjectionMemo.invalidateAll();
+    }
+
+    protected static List<Step> executeCustomScript(Set<Host> hosts, final DeployedApplication deployedApplication, String deployingUser){
     	if (!deployedApplication.hasProperty("scriptPath"))
     		throw new RuntimeException("Missing scriptPath property");
     	String scriptPath = deployedApplication.getProperty("scriptPath");
@@ -90,29 +236,145 @@ public class IdentityContributor {
     	if (deployedApplication.hasProperty("scriptClasspath")){
     		scriptClasspath = deployedApplication.getProperty("scriptClasspath");
     	}
-    	ScriptRunner.executeScript(deployedApplication, deployedApplication.getEnvironment(), hosts, scriptPath, scriptClasspath);
-    	final Iterable<List<Step>> transform = transform(hosts, new Function<Host, List<Step>>() {
-    		@Override
-            public List<Step> apply(final Host host) {
-    			if (!deployedApplication.hasProperty("checkConnection")) {
-                    return null;
-                }
-    			final Boolean checkConnection = deployedApplication.getProperty("checkConnection");
-                return (checkConnection ? Collections.singletonList(new CheckCommandExecutionStep(host)) : Collections.EMPTY_LIST);
-    		}	
-    	});	
-    	return newArrayList(concat(transform));
+
+    	String scriptEngine = null;
+    	if (deployedApplication.hasProperty("scriptEngine")){
+    		scriptEngine = deployedApplication.getProperty("scriptEngine");
+    	}
+    	final String engineName = ScriptEngines.resolve(scriptEngine, scriptPath);
+    	if (ScriptEngines.JAVA.equals(engineName) && getBooleanProperty(deployedApplication, "scriptPerHost", false)) {
+    		throw new DeployitException(format("scriptPerHost is not supported by the %s script engine of %s, a Java credential script resolves all hosts in one call", engineName, scriptPath));
+    	}
+    	final int timeout = getIntProperty(deployedApplication, "scriptTimeout", DEFAULT_SCRIPT_TIMEOUT_SECONDS);
+
+    	final int cacheTtl = getIntProperty(deployedApplication, "scriptCacheTtl", 0);
+    	final String username = cacheTtl > 0 ? deployingUser : null;
+    	final String environmentId = deployedApplication.getEnvironment().getId();
+    	final String script = ScriptResultCache.scriptKey(scriptPath, scriptClasspath);
+    	final CredentialOverlay overlay = new CredentialOverlay();
+    	Set<Host> unresolvedHosts = hosts;
+    	if (username != null) {
+    		unresolvedHosts = applyCachedScriptCredentials(hosts, username, environmentId, script, overlay);
+    		if (unresolvedHosts.isEmpty()) {
+    			logger.debug("Credentials of all {} host(s) found in the script cache, not running {}", hosts.size(), scriptPath);
+    			overlay.apply();
+    			return checkConnectionSteps(hosts, deployedApplication);
+    		}
+    	} else if (cacheTtl > 0) {
+    		logger.warn("Cannot determine the deploying user, script credentials are not cached");
+    	}
+
+    	Map<Host, HostCredentials> written;
+    	if (getBooleanProperty(deployedApplication, "scriptPerHost", false)) {
+    		int concurrency = getIntProperty(deployedApplication, "scriptConcurrency", DEFAULT_SCRIPT_CONCURRENCY);
+    		written = ScriptRunner.executeScriptPerHost(deployedApplication, deployedApplication.getEnvironment(), unresolvedHosts, scriptPath, scriptClasspath, concurrency, engineName, timeout);
+    		for (Map.Entry<Host, HostCredentials> entry : written.entrySet()) {
+    			logger.debug("IdentityContributor injects script credentials in a host {} ", entry.getKey().getId());
+    			overlay.put(entry.getKey(), entry.getValue());
+    		}
+    	} else {
+    		Map<Host, HostCredentials> before = username != null ? credentialsOf(unresolvedHosts) : Collections.<Host, HostCredentials>emptyMap();
+    		ScriptRunner.executeScript(deployedApplication, deployedApplication.getEnvironment(), unresolvedHosts, scriptPath, scriptClasspath, engineName, timeout);
+    		written = changedCredentials(before);
+    	}
+    	overlay.apply();
+
+    	if (username != null) {
+    		for (Map.Entry<Host, HostCredentials> entry : written.entrySet()) {
+    			ScriptResultCache.put(username, environmentId, entry.getKey().getId(), script, entry.getValue(), cacheTtl);
+    		}
+    	}
+    	return checkConnectionSteps(hosts, deployedApplication);
+    }
+
+    static Map<Host, HostCredentials> credentialsOf(Set<Host> hosts) {
+    	Map<Host, HostCredentials> credentials = newLinkedHashMap();
+    	for (Host host : hosts) {
+    		credentials.put(host, HostCredentials.of(host));
+    	}
+    	return credentials;
+    }
+
+    /**
+     * @return the current credentials of the hosts the script changed, so hosts it skipped are not cached
+     */
+    static Map<Host, HostCredentials> changedCredentials(Map<Host, HostCredentials> before) {
+    	Map<Host, HostCredentials> changed = newLinkedHashMap();
+    	for (Map.Entry<Host, HostCredentials> entry : before.entrySet()) {
+    		HostCredentials after = HostCredentials.of(entry.getKey());
+    		if (!after.equals(entry.getValue()) && !after.isEmpty()) {
+    			changed.put(entry.getKey(), after);
+    		}
+    	}
+    	return changed;
+    }
+
+    /**
+     * Adds the cached script credentials of the user to the overlay.
+     *
+     * @return the hosts without cached credentials
+     */
+    private static Set<Host> applyCachedScriptCredentials(Set<Host> hosts, String username, String environmentId, String script, CredentialOverlay overlay) {
+    	ImmutableSet.Builder<Host> unresolved = ImmutableSet.builder();
+    	for (Host host : hosts) {
+    		HostCredentials cached = ScriptResultCache.get(username, environmentId, host.getId(), script);
+    		if (cached == null) {
+    			unresolved.add(host);
+    		} else {
+    			logger.debug("IdentityContributor injects cached script credentials in a host {} ", host.getId());
+    			overlay.put(host, cached);
+    		}
+    	}
+    	return unresolved.build();
     }
     
+    protected static List<Step> injectProviderCredentials(Set<Host> hosts, final DeployedApplication deployedApplication){
+    	logger.trace("injectProviderCredentials()");
+    	String providerClass = CredentialProviders.DEFAULT_PROVIDER;
+    	if (deployedApplication.hasProperty("credentialProvider") && !Strings.isNullOrEmpty(deployedApplication.<String>getProperty("credentialProvider"))) {
+    		providerClass = deployedApplication.getProperty("credentialProvider");
+    	}
+    	int timeout = getIntProperty(deployedApplication, "credentialProviderTimeout", DEFAULT_PROVIDER_TIMEOUT_SECONDS);
+    	CredentialProvider provider = CredentialProviders.get(providerClass);
+    	logger.debug("Fetching credentials of {} host(s) from {}", hosts.size(), providerClass);
+
+    	Future<Map<String, HostCredentials>> future = provider.fetchCredentials(deployedApplication, hosts);
+    	Map<String, HostCredentials> credentials;
+    	try {
+    		credentials = future.get(timeout, TimeUnit.SECONDS);
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		throw new DeployitException(format("Interrupted while fetching credentials from %s", providerClass), e);
+    	} catch (ExecutionException e) {
+    		throw new DeployitException(format("Credential provider %s failed: %s", providerClass, e.getCause().getMessage()), e.getCause());
+    	} catch (TimeoutException e) {
+    		future.cancel(true);
+    		throw new DeployitException(format("Credential provider %s did not answer within %d s", providerClass, timeout));
+    	}
+
+    	List<String> missing = newArrayList();
+    	CredentialOverlay overlay = new CredentialOverlay();
+    	for (Host host : hosts) {
+    		HostCredentials hostCredentials = credentials.get(host.getId());
+    		if (hostCredentials == null || hostCredentials.isEmpty()) {
+    			missing.add(host.getId());
+    			continue;
+    		}
+    		logger.debug("IdentityContributor injects provider credentials in a host {} ", host.getId());
+    		overlay.put(host, hostCredentials);
+    	}
+    	if (!missing.isEmpty()) {
+    		throw new DeployitException(format("Credential provider %s returned no credentials for host(s) %s", providerClass, missing));
+    	}
+    	overlay.apply();
+    	return checkConnectionSteps(hosts, deployedApplication);
+    }
+
     protected static List<Step> injectSshKeys(Set<Host> hosts, final DeployedApplication deployedApplication, boolean performKeyLookup){
     	logger.trace("injectSshKeys()");
     	final Environment environment = deployedApplication.getEnvironment();
     	String privateKeyFileName = deployedApplication.getProperty("privateKey");
     	
-    	if (privateKeyFileName==null){
-    		throw new DeployitException("Please set a value for the privateKey property");
-    	}
-    	
     	if (performKeyLookup){
     		if (!environment.hasProperty("privateKeySelectorConfiguration")){
     			throw new RuntimeException("Property privateKeySelectorConfiguration is not defined on environment");
@@ -121,69 +383,183 @@ public class IdentityContributor {
     		if (configuration==null){
     			throw new RuntimeException("Property privateKeySelectorConfiguration is not set on environment");
     		}
-    		String privateKeyId = deployedApplication.getProperty("privateKey");
-    		String keyFileName = configuration.getPrivateKeyIds().get(privateKeyId);
-    		if (keyFileName==null){
-    			throw new RuntimeException(format("Key selector not found or returned null value : %s", privateKeyId));
+    		KeySelectionRules rules = KeySelectionRules.of(configuration);
+    		if (!rules.isEmpty()){
+    			return injectSelectedSshKeys(hosts, deployedApplication, configuration, rules);
     		}
-    		privateKeyFileName = keyFileName;
+    		if (privateKeyFileName==null){
+    			throw new DeployitException("Please set a value for the privateKey property");
+    		}
+    		privateKeyFileName = PrivateKeyStore.select(configuration, privateKeyFileName, deployedApplication.<String>getProperty("passphrase"));
+    	} else if (privateKeyFileName==null){
+    		throw new DeployitException("Please set a value for the privateKey property");
+    	} else if (!fileExists(privateKeyFileName)){
+    		throw new DeployitException(String.format("File not found : %s",privateKeyFileName));
     	}
     	final String privateKey = privateKeyFileName;
     	
-    	if (!fileExists(privateKeyFileName)){
-    		throw new DeployitException(String.format("File not found : %s",privateKeyFileName));
+    	CredentialOverlay overlay = new CredentialOverlay();
+    	for (Host host : hosts) {
+    		setSshKey(overlay, host, "privateKey", privateKey, "passphrase", deployedApplication);
     	}
-    	
-    	final Iterable<List<Step>> transform = transform(hosts, new Function<Host, List<Step>>() {
-    		@Override
-            public List<Step> apply(final Host host) {
-    			setSshKey(host, "privateKey", privateKey, "passphrase", deployedApplication);
-    			if (!deployedApplication.hasProperty("checkConnection")) {
-                    return null;
-                }
-    			final Boolean checkConnection = deployedApplication.getProperty("checkConnection");
-                return (checkConnection ? Collections.singletonList(new CheckCommandExecutionStep(host)) : Collections.EMPTY_LIST);
-    		}	
-    	});	
-    	
-    	return newArrayList(concat(transform));
+    	overlay.apply();
+    	return checkConnectionSteps(hosts, deployedApplication);
     }	
+
+    /**
+     * Selects the private key of every host with the key selection rules of the configuration. Hosts that no rule
+     * matches get the private key chosen on the deployed application. A key gets the passphrase configured for its id
+     * in the configuration; otherwise only the privateKey of the deployed application gets its passphrase, and the
+     * passphrase of the host is left as is for other keys.
+     */
+    private static List<Step> injectSelectedSshKeys(Set<Host> hosts, final DeployedApplication deployedApplication, PrivateKeySelectorConfiguration configuration, KeySelectionRules rules){
+    	String defaultKeyId = deployedApplication.getProperty("privateKey");
+    	Map<String, String> keyFiles = new HashMap<String, String>();
+    	CredentialOverlay overlay = new CredentialOverlay();
+    	for (Host host : hosts) {
+    		String keyId = rules.select(host);
+    		if (keyId == null) {
+    			keyId = defaultKeyId;
+    		}
+    		if (keyId == null) {
+    			throw new DeployitException(String.format("No key selection rule matches host %s, please set a value for the privateKey property", host.getId()));
+    		}
+    		String passphrase = keyPassphrase(configuration, keyId, defaultKeyId, deployedApplication);
+    		String keyFile = keyFiles.get(keyId);
+    		if (keyFile == null) {
+    			keyFile = PrivateKeyStore.select(configuration, keyId, Strings.emptyToNull(passphrase));
+    			keyFiles.put(keyId, keyFile);
+    		}
+    		logger.debug("Selected private key {} for host {}", keyId, host.getId());
+    		if (configuration.getKeyPassphrases() != null && configuration.getKeyPassphrases().containsKey(keyId)) {
+    			overlay.put(host, new HostCredentials(null, null, keyFile, Strings.emptyToNull(passphrase)));
+    		} else if (keyId.equals(defaultKeyId)) {
+    			setSshKey(overlay, host, "privateKey", keyFile, "passphrase", deployedApplication);
+    		} else {
+    			overlay.put(host, new HostCredentials(null, null, keyFile, null));
+    		}
+    	}
+    	overlay.apply();
+    	return checkConnectionSteps(hosts, deployedApplication);
+    }
         
+    /**
+     * @return the passphrase of the key, or null to leave the passphrase of the host as is
+     */
+    private static String keyPassphrase(PrivateKeySelectorConfiguration configuration, String keyId, String defaultKeyId, final DeployedApplication deployedApplication) {
+    	Map<String, String> keyPassphrases = configuration.getKeyPassphrases();
+    	if (keyPassphrases != null && keyPassphrases.containsKey(keyId)) {
+    		return keyPassphrases.get(keyId);
+    	}
+    	return keyId.equals(defaultKeyId) ? deployedApplication.<String>getProperty("passphrase") : null;
+    }
+
     protected static List<Step> injectUsernames(Set<Host> hosts, final DeployedApplication deployedApplication){
     	logger.trace("injectUsernames()");
-    	final Boolean perOsCredential = isPerOsCredential(deployedApplication);
-
-        final Iterable<List<Step>> transform = transform(hosts, new Function<Host, List<Step>>() {
-            @Override
-            public List<Step> apply(final Host host) {
-                if (perOsCredential) {
-                    switch (host.getOs()) {
-                        case WINDOWS:
-                            logger.debug("IdentityContributor injects credentials in a {} host {}", "WINDOWS", host.getId());
-                            setCredentials(host, "windowsUsername", "windowsPassword", deployedApplication);
-                            break;
-                        case UNIX:
-                            logger.debug("IdentityContributor injects credentials in a {} host {}", "UNIX", host.getId());
-                            setCredentials(host, "unixUsername", "unixPassword",deployedApplication);
-                            break;
-                    }
-                } else {
-                    logger.debug("IdentityContributor injects credentials in a host {} ", host.getId());
-                    setCredentials(host, "username", "password", deployedApplication);
-                }
+    	final SubnetCredentials subnetCredentials = getSubnetCredentials(deployedApplication.getEnvironment());
+    	// only required for hosts without subnet credentials, so an environment fully covered by subnets needs no username
+    	Boolean perOsCredential = null;
+    	final CredentialOverlay overlay = new CredentialOverlay();
 
-                if (!deployedApplication.hasProperty("checkConnection")) {
-                    return null;
+        for (Host host : hosts) {
+            HostCredentials credentials = subnetCredentials == null ? null : subnetCredentials.lookup(host);
+            if (credentials != null) {
+                logger.debug("IdentityContributor injects the subnet credentials of user {} in host {}", credentials.getUsername(), host.getId());
+                overlay.put(host, credentials);
+                continue;
+            }
+            if (perOsCredential == null) {
+                perOsCredential = isPerOsCredential(deployedApplication);
+            }
+            if (perOsCredential) {
+                switch (host.getOs()) {
+                    case WINDOWS:
+                        logger.debug("IdentityContributor injects credentials in a {} host {}", "WINDOWS", host.getId());
+                        setCredentials(overlay, host, "windowsUsername", "windowsPassword", deployedApplication);
+                        break;
+                    case UNIX:
+                        logger.debug("IdentityContributor injects credentials in a {} host {}", "UNIX", host.getId());
+                        setCredentials(overlay, host, "unixUsername", "unixPassword",deployedApplication);
+                        break;
                 }
-                final Boolean checkConnection = deployedApplication.getProperty("checkConnection");
-                return (checkConnection ? Collections.singletonList(new CheckCommandExecutionStep(host)) : Collections.EMPTY_LIST);
+            } else {
+                logger.debug("IdentityContributor injects credentials in a host {} ", host.getId());
+                setCredentials(overlay, host, "username", "password", deployedApplication);
+            }
+        }
+        overlay.apply();
+        return checkConnectionSteps(hosts, deployedApplication);
+    }
+
+    /**
+     * Creates the connection check steps for the hosts: one CheckCommandExecutionStep per host, or a single
+     * ParallelCheckConnectionStep for all hosts when 'checkConnectionParallel' is set.
+     * When 'checkConnectionCacheTtl' is set, hosts checked successfully with the same credentials within that many
+     * seconds are not checked again.
+     */
+    protected static List<Step> checkConnectionSteps(Set<Host> hosts, final DeployedApplication deployedApplication) {
+        if (!deployedApplication.hasProperty("checkConnection") || hosts.isEmpty()) {
+            return newArrayList();
+        }
+        final Boolean checkConnection = deployedApplication.getProperty("checkConnection");
+        if (!checkConnection) {
+            return newArrayList();
+        }
+        final int cacheTtl = getIntProperty(deployedApplication, "checkConnectionCacheTtl", 0);
+        List<Host> hostsToCheck = newArrayList();
+        for (Host host : hosts) {
+            if (cacheTtl > 0 && ConnectionCheckCache.isFresh(host)) {
+                logger.debug("Connection to host {} recently checked with the same credentials, skipping check", host.getId());
+                continue;
+            }
+            hostsToCheck.add(host);
+        }
+        if (cacheTtl > 0) {
+            logger.debug("Connection check cache: {} of {} host(s) to check (hits {}, misses {})", hostsToCheck.size(), hosts.size(),
+                    ConnectionCheckCache.getHitCount(), ConnectionCheckCache.getMissCount());
+        }
+        if (hostsToCheck.isEmpty()) {
+            return newArrayList();
+        }
+        if (getBooleanProperty(deployedApplication, "checkConnectionParallel", false)) {
+            int concurrency = getIntProperty(deployedApplication, "checkConnectionConcurrency", ParallelCheckConnectionStep.DEFAULT_CONCURRENCY);
+            int timeout = getIntProperty(deployedApplication, "checkConnectionTimeout", ParallelCheckConnectionStep.DEFAULT_TIMEOUT_SECONDS);
+            logger.debug("Adding a parallel connection check of {} host(s), concurrency {}, timeout {}s", hostsToCheck.size(), concurrency, timeout);
+            return newArrayList((Step) new ParallelCheckConnectionStep(hostsToCheck, concurrency, timeout, cacheTtl));
+        }
+        Collection<List<Host>> endpoints = ConnectionEndpoint.group(hostsToCheck);
+        if (endpoints.size() < hostsToCheck.size()) {
+            logger.debug("{} host(s) share {} endpoint(s), checking each endpoint once", hostsToCheck.size(), endpoints.size());
+        }
+        List<Step> steps = newArrayList();
+        for (List<Host> endpoint : endpoints) {
+            Host host = endpoint.get(0);
+            if (cacheTtl > 0 || endpoint.size() > 1) {
+                steps.add(new CachingCheckCommandExecutionStep(host, endpoint.subList(1, endpoint.size()), cacheTtl));
+            } else {
+                steps.add(new CheckCommandExecutionStep(host));
             }
-        }   
-        );
-        return newArrayList(concat(transform));
-       } 
+        }
+        return steps;
+    }
+
+    private static boolean getBooleanProperty(final DeployedApplication deployedApplication, final String propertyName, final boolean defaultValue) {
+        if (!deployedApplication.hasProperty(propertyName)) {
+            return defaultValue;
+        }
+        final Boolean value = deployedApplication.getProperty(propertyName);
+        return value == null ? defaultValue : value;
+    }
+
+    private static int getIntProperty(final DeployedApplication deployedApplication, final String propertyName, final int defaultValue) {
+        if (!deployedApplication.hasProperty(propertyName)) {
+            return defaultValue;
+        }
+        final Integer value = deployedApplication.getProperty(propertyName);
+        return value == null || value <= 0 ? defaultValue : value;
+    }
        
-    private static void setSshKey(final Host host, final String privateKeyFilePropertyName, final String privateKeyValue, final String passphrasePropertyName, final DeployedApplication deployedApplication) {
+    private static void setSshKey(final CredentialOverlay overlay, final Host host, final String privateKeyFilePropertyName, final String privateKeyValue, final String passphrasePropertyName, final DeployedApplication deployedApplication) {
     	logger.trace("setSshKey()");
     	final String privateKeyFile = privateKeyValue;
         final String passphrase = deployedApplication.getProperty(passphrasePropertyName);
@@ -198,11 +574,10 @@ public class IdentityContributor {
                     privateKeyLabel, passphraseLabel
             ));
         }
-        host.setProperty("privateKeyFile", privateKeyFile);
-        host.setProperty("passphrase", passphrase);
+        overlay.put(host, new HostCredentials(null, null, privateKeyFile, passphrase));
        }
         
-        private static void setCredentials(final Host host, final String usernamePropertyName, final String passwordPropertyName, final DeployedApplication deployedApplication) {
+        private static void setCredentials(final CredentialOverlay overlay, final Host host, final String usernamePropertyName, final String passwordPropertyName, final DeployedApplication deployedApplication) {
                 final String username = deployedApplication.getProperty(usernamePropertyName);
                 final String password = deployedApplication.getProperty(passwordPropertyName);
 
@@ -216,9 +591,20 @@ public class IdentityContributor {
                             usernameLabel, passwordLabel
                     ));
                 }
-                host.setProperty("username", username);
-                host.setProperty("password", password);
+                overlay.put(host, new HostCredentials(username, password, null, null));
+        }
+
+    private static SubnetCredentials getSubnetCredentials(final Environment environment) {
+        if (!environment.hasProperty("subnetCredentialsConfiguration")) {
+            return null;
+        }
+        SubnetCredentialsConfiguration configuration = environment.getProperty("subnetCredentialsConfiguration");
+        if (configuration == null) {
+            return null;
         }
+        SubnetCredentials subnetCredentials = SubnetCredentials.of(configuration);
+        return subnetCredentials.isEmpty() ? null : subnetCredentials;
+    }
 
     private static Boolean isPerOsCredential(final DeployedApplication deployedApplication) {
         if (deployedApplication.hasProperty("unixUsername") && deployedApplication.hasProperty("unixPassword") &&
@@ -234,49 +620,6 @@ public class IdentityContributor {
     }
     
 
-    private static final Function<Delta, Host> DEPLOYED_TO_HOST = new ToHost() {
-        public Host apply(Delta input) {
-            return toHost(input.getDeployed());
-        }
-    };
-
-    private static final Function<Delta, Host> PREVIOUS_TO_HOST = new ToHost() {
-        public Host apply(Delta input) {
-            return toHost(input.getPrevious());
-        }
-    };
-
-    static abstract class ToHost implements Function<Delta, Host> {
-        protected Host toHost(Deployed<?, ?> deployed) {
-            if (deployed == null) {
-                return null;
-            }
-            return toHost(deployed.getContainer());
-        }
-
-        private Host toHost(final ConfigurationItem item) {
-            if (item instanceof Host) {
-                return (Host) item;
-            }
-            if (item instanceof HostContainer) {
-                HostContainer hostContainer = (HostContainer) item;
-                return hostContainer.getHost();
-            }
-            final Collection<PropertyDescriptor> propertyDescriptors = item.getType().getDescriptor().getPropertyDescriptors();
-            for (PropertyDescriptor propertyDescriptor : propertyDescriptors) {
-                if (propertyDescriptor.getReferencedType() == null)
-                    continue;
-                if (propertyDescriptor.getReferencedType().instanceOf(Type.valueOf(Host.class))
-                        || propertyDescriptor.isAsContainment()) {
-                    final Host host = toHost((ConfigurationItem) propertyDescriptor.get(item));
-                    if (host != null)
-                        return host;
-                }
-            }
-            return null;
-        }
-    }
-    
     protected static boolean fileExists(String fileName){
     	File f = new File(fileName); 
     	return f.exists() & f.isFile();
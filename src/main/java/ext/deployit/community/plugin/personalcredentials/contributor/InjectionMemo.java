@@ -0,0 +1,153 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+import ext.deployit.community.plugin.personalcredentials.ci.SubnetCredentialsConfiguration;
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialCipher;
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+
+/**
+ * Credentials injected by the last plans, so a re-plan of the same deployment by the same user does not resolve them
+ * again. An entry is keyed by a fingerprint of the deploying user, the deployed application, the credential properties
+ * of the deployed application and environment, and the id, type, address and OS of every target host: any change
+ * to one of them gives another key. Entries hold the encrypted credentials of every host and expire after
+ * <code>xlc.personalcredentials.injectionMemo.ttl</code> seconds (default 0: the memo is disabled).
+ */
+class InjectionMemo {
+
+    static final long TTL_SECONDS = Long.getLong("xlc.personalcredentials.injectionMemo.ttl", 0);
+    static final int MAX_ENTRIES = Integer.getInteger("xlc.personalcredentials.injectionMemo.maxEntries", 1000);
+
+    static final List<String> CREDENTIAL_PROPERTIES = ImmutableList.of(
+            "credentialsType", "username", "password", "unixUsername", "unixPassword", "windowsUsername", "windowsPassword",
+            "overrideHostCredentials", "privateKey", "passphrase", "scriptPath", "scriptClasspath", "scriptEngine", "scriptPerHost",
+            "credentialsFile", "credentialProvider");
+
+    private static final Cache<String, Map<String, byte[]>> entries = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES).expireAfterWrite(Math.max(TTL_SECONDS, 1), TimeUnit.SECONDS).build();
+
+    static boolean isEnabled() {
+        return TTL_SECONDS > 0;
+    }
+
+    static String fingerprint(String username, DeployedApplication deployedApplication, Collection<Host> hosts) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putString(hasher, username);
+        putString(hasher, deployedApplication.getId());
+        for (String propertyName : CREDENTIAL_PROPERTIES) {
+            if (deployedApplication.hasProperty(propertyName)) {
+                putString(hasher, propertyName);
+                putValue(hasher, deployedApplication.getProperty(propertyName));
+            }
+        }
+        ConfigurationItem environment = deployedApplication.getEnvironment();
+        putString(hasher, environment.getId());
+        if (environment.hasProperty("privateKeySelectorConfiguration")) {
+            PrivateKeySelectorConfiguration configuration = environment.getProperty("privateKeySelectorConfiguration");
+            if (configuration != null) {
+                putString(hasher, configuration.getId());
+                putValue(hasher, sorted(configuration.getPrivateKeyIds()));
+                putValue(hasher, sorted(configuration.getKeyPassphrases()));
+                putValue(hasher, configuration.getKeySelectionRules());
+            }
+        }
+        if (environment.hasProperty("subnetCredentialsConfiguration")) {
+            SubnetCredentialsConfiguration configuration = environment.getProperty("subnetCredentialsConfiguration");
+            if (configuration != null) {
+                putString(hasher, configuration.getId());
+                putValue(hasher, sorted(configuration.getUsernames()));
+                putValue(hasher, sorted(configuration.getPasswords()));
+            }
+        }
+        Map<String, Host> sortedHosts = new TreeMap<String, Host>();
+        for (Host host : hosts) {
+            sortedHosts.put(host.getId(), host);
+        }
+        for (Host host : sortedHosts.values()) {
+            putString(hasher, host.getId());
+            putValue(hasher, host.getType());
+            putValue(hasher, host.hasProperty(HostCredentials.ADDRESS) ? host.getProperty(HostCredentials.ADDRESS) : null);
+            putValue(hasher, host.getOs());
+        }
+        // the credential properties include passwords, only keep a keyed hash of them
+        return CredentialCipher.mac(hasher.hash().toString());
+    }
+
+    /**
+     * Sets the memoized credentials on the hosts.
+     *
+     * @return false, leaving the hosts unchanged, when there are no memoized credentials for the fingerprint
+     */
+    static boolean apply(String fingerprint, Set<Host> hosts) {
+        Map<String, byte[]> credentials = entries.getIfPresent(fingerprint);
+        if (credentials == null) {
+            return false;
+        }
+        for (Host host : hosts) {
+            byte[] encrypted = credentials.get(host.getId());
+            if (encrypted != null) {
+                CredentialCipher.decrypt(encrypted).applyTo(host);
+            }
+        }
+        logger.debug("Re-plan: applied the memoized credentials of {} host(s)", credentials.size());
+        return true;
+    }
+
+    /**
+     * Memoizes the credentials currently set on the hosts.
+     */
+    static void put(String fingerprint, Set<Host> hosts) {
+        ImmutableMap.Builder<String, byte[]> credentials = ImmutableMap.builder();
+        for (Host host : hosts) {
+            credentials.put(host.getId(), CredentialCipher.encrypt(HostCredentials.of(host)));
+        }
+        entries.put(fingerprint, credentials.build());
+    }
+
+    static void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    private static Map<String, String> sorted(Map<String, String> map) {
+        return map == null ? new TreeMap<String, String>() : new TreeMap<String, String>(map);
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        hasher.putString(value == null ? "" : value, StandardCharsets.UTF_8).putChar('\0');
+    }
+
+    private static void putValue(Hasher hasher, Object value) {
+        putString(hasher, value == null ? null : value.toString());
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(InjectionMemo.class);
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static java.lang.String.format;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+
+/**
+ * Deep copies of configuration items, so credentials are set on CIs owned by one plan or one step and never on the
+ * instances shared with the repository or other plans. The items are copied in a single serialization stream: items
+ * referencing the same CI, such as two containers on one host, keep sharing its copy.
+ */
+public class CiCopies {
+
+    /**
+     * @return the copies, in the order of the items
+     * @throws DeployitException when an item cannot be serialized
+     */
+    public static <T extends ConfigurationItem> List<T> copy(List<T> items) {
+        if (items.isEmpty()) {
+            return new ArrayList<T>();
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(new ArrayList<T>(items));
+            }
+            final ClassLoader classLoader = items.get(0).getClass().getClassLoader();
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                    try {
+                        return Class.forName(desc.getName(), false, classLoader);
+                    } catch (ClassNotFoundException e) {
+                        return super.resolveClass(desc);
+                    }
+                }
+            }) {
+                @SuppressWarnings("unchecked")
+                List<T> copies = (List<T>) in.readObject();
+                return copies;
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new DeployitException(format("Cannot copy the configuration items of %s: %s", items.get(0).getId(), e.toString()), e);
+        }
+    }
+
+    public static <T extends ConfigurationItem> T copy(T item) {
+        List<T> items = new ArrayList<T>(1);
+        items.add(item);
+        return copy(items).get(0);
+    }
+}
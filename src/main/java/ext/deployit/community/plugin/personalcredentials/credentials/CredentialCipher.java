@@ -0,0 +1,122 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+import com.google.common.io.BaseEncoding;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+/**
+ * AES-GCM encryption of host credentials kept in memory by the plugin caches, with a key generated when the plugin
+ * loads, which never leaves memory. Secrets that only need to be compared, such as the passphrases in fingerprints,
+ * are kept as an HMAC-SHA256 with another per-process key, so they cannot be brute-forced offline.
+ */
+public class CredentialCipher {
+
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_LENGTH_BITS = 128;
+
+    private static final SecretKey key = generateKey("AES", 128);
+    private static final SecretKey macKey = generateKey("HmacSHA256", 256);
+    private static final SecureRandom random = new SecureRandom();
+
+    private static final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(macKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        }
+    };
+
+    public static byte[] encrypt(HostCredentials credentials) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeNullable(out, credentials.getUsername());
+            writeNullable(out, credentials.getPassword());
+            writeNullable(out, credentials.getPrivateKeyFile());
+            writeNullable(out, credentials.getPassphrase());
+            out.flush();
+
+            byte[] iv = new byte[IV_LENGTH];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+            byte[] encrypted = cipher.doFinal(bytes.toByteArray());
+            byte[] result = new byte[IV_LENGTH + encrypted.length];
+            System.arraycopy(iv, 0, result, 0, IV_LENGTH);
+            System.arraycopy(encrypted, 0, result, IV_LENGTH, encrypted.length);
+            return result;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new DeployitException("Cannot encrypt cached credentials", e);
+        }
+    }
+
+    public static HostCredentials decrypt(byte[] encrypted) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH_BITS, encrypted, 0, IV_LENGTH));
+            byte[] plain = cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+            return new HostCredentials(readNullable(in), readNullable(in), readNullable(in), readNullable(in));
+        } catch (IOException | GeneralSecurityException e) {
+            throw new DeployitException("Cannot decrypt cached credentials", e);
+        }
+    }
+
+    /**
+     * @return the hex encoded HMAC-SHA256 of the secret with the key of this process
+     */
+    public static String mac(String secret) {
+        Mac mac = macs.get();
+        return BaseEncoding.base16().lowerCase().encode(mac.doFinal(secret.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static SecretKey generateKey(String algorithm, int size) {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance(algorithm);
+            generator.init(size);
+            return generator.generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(algorithm + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+/**
+ * Credentials of the hosts of one deployment. The credentials are collected without touching the hosts and are
+ * applied in one go once every host has been resolved, so a plan that fails half-way leaves all hosts unchanged.
+ * Applying writes the properties whose value differs on the given host instances: the planner hands it the copies
+ * made for the plan (see {@link CiCopies}), not the CIs of the repository.
+ */
+public class CredentialOverlay {
+
+    private final Map<Host, HostCredentials> credentials = new IdentityHashMap<Host, HostCredentials>();
+
+    /**
+     * Adds credentials for the host; non null values replace the ones already in the overlay.
+     */
+    public void put(Host host, HostCredentials hostCredentials) {
+        HostCredentials current = credentials.get(host);
+        credentials.put(host, current == null ? hostCredentials : current.overriddenBy(hostCredentials));
+    }
+
+    /**
+     * @return the credentials of the host in the overlay, or null
+     */
+    public HostCredentials get(Host host) {
+        return credentials.get(host);
+    }
+
+    public int size() {
+        return credentials.size();
+    }
+
+    /**
+     * Writes the credentials on the hosts.
+     *
+     * @return the number of hosts that had at least one property written
+     */
+    public int apply() {
+        int written = 0;
+        for (Map.Entry<Host, HostCredentials> entry : credentials.entrySet()) {
+            if (entry.getValue().applyTo(entry.getKey())) {
+                written++;
+            }
+        }
+        logger.debug("Applied the credentials of {} host(s), {} changed", credentials.size(), written);
+        return written;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(CredentialOverlay.class);
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+/**
+ * Looks up the credentials of the hosts of a deployment (CredentialsType.CT_PROVIDER).
+ * A provider receives all hosts of the plan in one call, so it can fetch their credentials in a few batched
+ * requests. Implementations need a public no-argument constructor and must be thread safe: one instance is shared by
+ * all deployments. Configuration is read from the deployed application properties.
+ */
+public interface CredentialProvider {
+
+    /**
+     * Starts the lookup of the credentials of the hosts.
+     *
+     * @return a future of the credentials keyed by host id; hosts without credentials are left out of the map
+     */
+    Future<Map<String, HostCredentials>> fetchCredentials(DeployedApplication deployedApplication, Set<Host> hosts);
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+/**
+ * Instantiates credential providers by class name, once per class.
+ */
+public class CredentialProviders {
+
+    public static final String DEFAULT_PROVIDER = FileCredentialProvider.class.getName();
+
+    private static final ConcurrentMap<String, CredentialProvider> providers = new ConcurrentHashMap<String, CredentialProvider>();
+
+    public static CredentialProvider get(String className) {
+        CredentialProvider provider = providers.get(className);
+        if (provider == null) {
+            provider = instantiate(className);
+            CredentialProvider existing = providers.putIfAbsent(className, provider);
+            if (existing != null) {
+                provider = existing;
+            }
+        }
+        return provider;
+    }
+
+    private static CredentialProvider instantiate(String className) {
+        try {
+            Class<?> providerClass = Class.forName(className, true, CredentialProviders.class.getClassLoader());
+            if (!CredentialProvider.class.isAssignableFrom(providerClass)) {
+                throw new DeployitException(String.format("Class %s does not implement %s", className, CredentialProvider.class.getName()));
+            }
+            return (CredentialProvider) providerClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new DeployitException(String.format("Credential provider class %s not found", className), e);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new DeployitException(String.format("Cannot instantiate credential provider %s", className), e);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import java.lang.reflect.Method;
+import java.security.Principal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Name of the user on whose behalf the current thread works, read from the Spring Security context of the
+ * XL Deploy server. The plugin API does not expose it, so the context is accessed reflectively.
+ */
+public class CurrentUser {
+
+    private static final String HOLDER_CLASS = "org.springframework.security.core.context.SecurityContextHolder";
+    private static final String CONTEXT_CLASS = "org.springframework.security.core.context.SecurityContext";
+
+    /**
+     * @return the user name, or null when it cannot be determined
+     */
+    public static String getName() {
+        try {
+            ClassLoader classLoader = CurrentUser.class.getClassLoader();
+            Method getContext = Class.forName(HOLDER_CLASS, true, classLoader).getMethod("getContext");
+            Method getAuthentication = Class.forName(CONTEXT_CLASS, true, classLoader).getMethod("getAuthentication");
+            Object context = getContext.invoke(null);
+            Object authentication = context == null ? null : getAuthentication.invoke(context);
+            if (authentication instanceof Principal) {
+                return ((Principal) authentication).getName();
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.debug("Cannot determine the current user", e);
+        }
+        return null;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(CurrentUser.class);
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.Futures;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+/**
+ * Reads the credentials of the hosts from a properties file on the XL Deploy server, set in the 'credentialsFile'
+ * property of the deployed application. Keys are the host id followed by the credential property name:
+ * <pre>
+ * Infrastructure/host1.username=scott
+ * Infrastructure/host1.password=tiger
+ * Infrastructure/host2.privateKeyFile=/home/xld/.ssh/id_rsa
+ * </pre>
+ * The file is local and small, so it is read synchronously in {@link #fetchCredentials}: the returned future is
+ * already complete and 'credentialProviderTimeout' does not apply to it. Remote providers should do their requests on
+ * an executor and return a pending future.
+ */
+public class FileCredentialProvider implements CredentialProvider {
+
+    public static final String CREDENTIALS_FILE_PROPERTY = "credentialsFile";
+
+    @Override
+    public Future<Map<String, HostCredentials>> fetchCredentials(DeployedApplication deployedApplication, Set<Host> hosts) {
+        if (!deployedApplication.hasProperty(CREDENTIALS_FILE_PROPERTY)) {
+            throw new DeployitException(String.format("Property %s is not defined on udm.DeployedApplication", CREDENTIALS_FILE_PROPERTY));
+        }
+        String fileName = deployedApplication.getProperty(CREDENTIALS_FILE_PROPERTY);
+        if (Strings.isNullOrEmpty(fileName)) {
+            throw new DeployitException(String.format("Property %s is not set on %s", CREDENTIALS_FILE_PROPERTY, deployedApplication.getId()));
+        }
+        Properties properties = load(new File(fileName));
+        Map<String, HostCredentials> credentials = newHashMap();
+        for (Host host : hosts) {
+            String prefix = host.getId() + ".";
+            HostCredentials hostCredentials = new HostCredentials(
+                    properties.getProperty(prefix + HostCredentials.USERNAME),
+                    properties.getProperty(prefix + HostCredentials.PASSWORD),
+                    properties.getProperty(prefix + HostCredentials.PRIVATE_KEY_FILE),
+                    properties.getProperty(prefix + HostCredentials.PASSPHRASE));
+            if (!hostCredentials.isEmpty()) {
+                credentials.put(host.getId(), hostCredentials);
+            }
+        }
+        logger.debug("Read credentials of {} of {} host(s) from {}", credentials.size(), hosts.size(), fileName);
+        return Futures.immediateFuture(credentials);
+    }
+
+    private static Properties load(File file) {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new DeployitException(String.format("Cannot read credentials file %s", file), e);
+        }
+        return properties;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(FileCredentialProvider.class);
+}
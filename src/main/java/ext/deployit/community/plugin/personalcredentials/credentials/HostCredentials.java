@@ -0,0 +1,171 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static com.google.common.base.Strings.nullToEmpty;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+
+/**
+ * The connection credentials of a host: username, password, private key file and passphrase. They are only applied to
+ * the copies of the host CIs made for a plan or control task (see {@link CiCopies}), never to the CIs shared with
+ * other tasks.
+ */
+public class HostCredentials {
+    public static final String USERNAME         = "username";
+    public static final String PASSWORD         = "password";
+    public static final String PRIVATE_KEY_FILE = "privateKeyFile";
+    public static final String PASSPHRASE       = "passphrase";
+    public static final String ADDRESS          = "address";
+
+    private final String username;
+    private final String password;
+    private final String privateKeyFile;
+    private final String passphrase;
+
+    public HostCredentials(String username, String password, String privateKeyFile, String passphrase) {
+        this.username = username;
+        this.password = password;
+        this.privateKeyFile = privateKeyFile;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Reads the credentials currently set on a host; properties the host type does not define are null.
+     */
+    public static HostCredentials of(ConfigurationItem host) {
+        return new HostCredentials(
+                HostCredentials.<String>getIfDefined(host, USERNAME),
+                HostCredentials.<String>getIfDefined(host, PASSWORD),
+                HostCredentials.<String>getIfDefined(host, PRIVATE_KEY_FILE),
+                HostCredentials.<String>getIfDefined(host, PASSPHRASE));
+    }
+
+    /**
+     * Reads the credentials from a map with the 'username', 'password', 'privateKeyFile' and 'passphrase' keys, as returned by a script.
+     */
+    public static HostCredentials fromMap(Map<?, ?> values) {
+        return new HostCredentials(
+                toString(values.get(USERNAME)),
+                toString(values.get(PASSWORD)),
+                toString(values.get(PRIVATE_KEY_FILE)),
+                toString(values.get(PASSPHRASE)));
+    }
+
+    /**
+     * Sets the non null credentials on the host, skipping the properties that already hold the same value.
+     *
+     * @return whether a property of the host was written
+     */
+    public boolean applyTo(ConfigurationItem host) {
+        boolean written = set(host, USERNAME, username);
+        written |= set(host, PASSWORD, password);
+        written |= set(host, PRIVATE_KEY_FILE, privateKeyFile);
+        written |= set(host, PASSPHRASE, passphrase);
+        return written;
+    }
+
+    private static boolean set(ConfigurationItem host, String propertyName, String value) {
+        if (value == null || value.equals(getIfDefined(host, propertyName))) {
+            return false;
+        }
+        host.setProperty(propertyName, value);
+        return true;
+    }
+
+    /**
+     * @return these credentials with the non null values of the other credentials replacing their counterpart
+     */
+    public HostCredentials overriddenBy(HostCredentials other) {
+        return new HostCredentials(
+                other.username != null ? other.username : username,
+                other.password != null ? other.password : password,
+                other.privateKeyFile != null ? other.privateKeyFile : privateKeyFile,
+                other.passphrase != null ? other.passphrase : passphrase);
+    }
+
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * Fingerprint of the host id, address and credentials of a host. Secrets are only part of it as a keyed hash (see
+     * {@link CredentialCipher#mac(String)}), any credential change gives another fingerprint.
+     */
+    public static String fingerprint(ConfigurationItem host) {
+        return of(host).fingerprint(host.getId(), HostCredentials.<Object>getIfDefined(host, ADDRESS));
+    }
+
+    public String fingerprint(String hostId, Object address) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(nullToEmpty(hostId), StandardCharsets.UTF_8).putChar('\0');
+        hasher.putString(address == null ? "" : address.toString(), StandardCharsets.UTF_8).putChar('\0');
+        hasher.putString(nullToEmpty(username), StandardCharsets.UTF_8).putChar('\0');
+        hasher.putString(nullToEmpty(privateKeyFile), StandardCharsets.UTF_8).putChar('\0');
+        hasher.putString(secretHash(password), StandardCharsets.UTF_8).putChar('\0');
+        hasher.putString(secretHash(passphrase), StandardCharsets.UTF_8);
+        return hasher.hash().toString();
+    }
+
+    private static String secretHash(String secret) {
+        return CredentialCipher.mac(nullToEmpty(secret));
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T getIfDefined(ConfigurationItem item, String propertyName) {
+        return item.hasProperty(propertyName) ? (T) item.getProperty(propertyName) : null;
+    }
+
+    public boolean isEmpty() {
+        return username == null && password == null && privateKeyFile == null && passphrase == null;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public String getPrivateKeyFile() {
+        return privateKeyFile;
+    }
+
+    public String getPassphrase() {
+        return passphrase;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof HostCredentials)) {
+            return false;
+        }
+        HostCredentials other = (HostCredentials) o;
+        return Objects.equal(username, other.username) && Objects.equal(password, other.password)
+                && Objects.equal(privateKeyFile, other.privateKeyFile) && Objects.equal(passphrase, other.passphrase);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(username, password, privateKeyFile, passphrase);
+    }
+
+    @Override
+    public String toString() {
+        return "HostCredentials[username=" + username + ", privateKeyFile=" + privateKeyFile + "]";
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static java.lang.String.format;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.InetAddresses;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.overthere.OperatingSystemFamily;
+
+import ext.deployit.community.plugin.personalcredentials.ci.SubnetCredentialsConfiguration;
+
+/**
+ * The credential sets of a {@link SubnetCredentialsConfiguration}, compiled once per configuration change into a
+ * longest-prefix-match radix tree. A host is resolved with a single walk down the tree using its address; the longest
+ * subnet holding a credential set for the OS of the host, or for any OS, wins. Host addresses that are not IP literals
+ * are not resolved, so planning never waits on DNS.
+ */
+public class SubnetCredentials {
+
+    private static final ConcurrentMap<String, SubnetCredentials> compiled = new ConcurrentHashMap<String, SubnetCredentials>();
+
+    private final Map<String, String> usernames;
+    private final Map<String, String> passwords;
+    private final SubnetTrie<CredentialSet> trie = new SubnetTrie<CredentialSet>();
+    private int size;
+
+    SubnetCredentials(Map<String, String> usernames, Map<String, String> passwords) {
+        this.usernames = ImmutableMap.copyOf(usernames);
+        this.passwords = ImmutableMap.copyOf(passwords);
+        Map<String, CredentialSet> sets = new HashMap<String, CredentialSet>();
+        for (Map.Entry<String, String> entry : usernames.entrySet()) {
+            String key = entry.getKey().trim();
+            String password = passwords.get(entry.getKey());
+            if (password == null) {
+                throw new DeployitException(format("No password defined for subnet credential set [%s]", key));
+            }
+            String cidr = key;
+            OperatingSystemFamily os = null;
+            int at = key.indexOf('@');
+            if (at >= 0) {
+                cidr = key.substring(0, at).trim();
+                try {
+                    os = OperatingSystemFamily.valueOf(key.substring(at + 1).trim().toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw new DeployitException(format("Invalid operating system in subnet credential set [%s]", key));
+                }
+            }
+            byte[] network = parseNetwork(cidr);
+            int prefixLength = parsePrefixLength(cidr, network.length * 8);
+            String normalized = InetAddresses.toAddrString(mask(network, prefixLength)) + "/" + prefixLength;
+            CredentialSet set = sets.get(normalized);
+            if (set == null) {
+                set = new CredentialSet();
+                sets.put(normalized, set);
+                trie.put(network, prefixLength, set);
+            }
+            HostCredentials credentials = new HostCredentials(entry.getValue(), password, null, null);
+            if (os == null) {
+                set.any = credentials;
+            } else {
+                set.perOs.put(os, credentials);
+            }
+            size++;
+        }
+    }
+
+    public static SubnetCredentials of(SubnetCredentialsConfiguration configuration) {
+        SubnetCredentials credentials = compiled.get(configuration.getId());
+        if (credentials == null || !credentials.usernames.equals(configuration.getUsernames()) || !credentials.passwords.equals(configuration.getPasswords())) {
+            credentials = new SubnetCredentials(configuration.getUsernames(), configuration.getPasswords());
+            compiled.put(configuration.getId(), credentials);
+            logger.debug("Compiled {} subnet credential set(s) of {}", credentials.size, configuration.getId());
+        }
+        return credentials;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the credentials of the longest subnet containing the address of the host, or null
+     */
+    public HostCredentials lookup(Host host) {
+        Object address = host.hasProperty(HostCredentials.ADDRESS) ? host.getProperty(HostCredentials.ADDRESS) : null;
+        if (address == null || !InetAddresses.isInetAddress(address.toString())) {
+            return null;
+        }
+        final OperatingSystemFamily os = host.getOs();
+        CredentialSet set = trie.longestMatch(InetAddresses.forString(address.toString()).getAddress(), new Predicate<CredentialSet>() {
+            @Override
+            public boolean apply(CredentialSet input) {
+                return input.get(os) != null;
+            }
+        });
+        return set == null ? null : set.get(os);
+    }
+
+    private static byte[] parseNetwork(String cidr) {
+        int slash = cidr.indexOf('/');
+        String address = slash < 0 ? cidr : cidr.substring(0, slash);
+        if (!InetAddresses.isInetAddress(address)) {
+            throw new DeployitException(format("Invalid subnet [%s], expected a CIDR block such as 10.1.0.0/16", cidr));
+        }
+        InetAddress inetAddress = InetAddresses.forString(address);
+        return inetAddress.getAddress();
+    }
+
+    private static int parsePrefixLength(String cidr, int maxLength) {
+        int slash = cidr.indexOf('/');
+        if (slash < 0) {
+            return maxLength;
+        }
+        try {
+            int prefixLength = Integer.parseInt(cidr.substring(slash + 1).trim());
+            if (prefixLength >= 0 && prefixLength <= maxLength) {
+                return prefixLength;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new DeployitException(format("Invalid prefix length in subnet [%s]", cidr));
+    }
+
+    private static InetAddress mask(byte[] network, int prefixLength) {
+        byte[] masked = network.clone();
+        for (int bit = prefixLength; bit < masked.length * 8; bit++) {
+            masked[bit >> 3] &= ~(1 << (7 - (bit & 7)));
+        }
+        try {
+            return InetAddress.getByAddress(masked);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CredentialSet {
+        private HostCredentials any;
+        private final Map<OperatingSystemFamily, HostCredentials> perOs = new EnumMap<OperatingSystemFamily, HostCredentials>(OperatingSystemFamily.class);
+
+        HostCredentials get(OperatingSystemFamily os) {
+            HostCredentials credentials = os == null ? null : perOs.get(os);
+            return credentials != null ? credentials : any;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(SubnetCredentials.class);
+}
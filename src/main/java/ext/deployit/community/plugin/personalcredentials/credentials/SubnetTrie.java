@@ -0,0 +1,64 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Binary radix tree over the bits of IP addresses, answering longest-prefix-match lookups in at most one step per
+ * address bit. IPv4 and IPv6 prefixes live in separate trees.
+ */
+class SubnetTrie<T> {
+
+    private final Node<T> ipv4 = new Node<T>();
+    private final Node<T> ipv6 = new Node<T>();
+
+    void put(byte[] network, int prefixLength, T value) {
+        Node<T> node = root(network);
+        for (int bit = 0; bit < prefixLength; bit++) {
+            int b = bitAt(network, bit);
+            if (node.children[b] == null) {
+                node.children[b] = new Node<T>();
+            }
+            node = node.children[b];
+        }
+        node.value = value;
+    }
+
+    /**
+     * @return the value of the longest prefix containing the address that the predicate accepts, or null
+     */
+    T longestMatch(byte[] address, Predicate<T> accept) {
+        Node<T> node = root(address);
+        T match = null;
+        int bits = address.length * 8;
+        for (int bit = 0; node != null; bit++) {
+            if (node.value != null && accept.apply(node.value)) {
+                match = node.value;
+            }
+            node = bit < bits ? node.children[bitAt(address, bit)] : null;
+        }
+        return match;
+    }
+
+    private Node<T> root(byte[] address) {
+        return address.length == 4 ? ipv4 : ipv6;
+    }
+
+    private static int bitAt(byte[] address, int bit) {
+        return (address[bit >> 3] >> (7 - (bit & 7))) & 1;
+    }
+
+    private static class Node<T> {
+        @SuppressWarnings("unchecked")
+        private final Node<T>[] children = new Node[2];
+        private T value;
+    }
+}
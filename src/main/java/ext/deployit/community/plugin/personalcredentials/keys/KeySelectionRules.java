@@ -0,0 +1,228 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.keys;
+
+import static java.lang.String.format;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+
+/**
+ * The key selection rules of a {@link PrivateKeySelectorConfiguration}, compiled once per configuration change.
+ * A rule matches the host id, address or one of the tags of a host against a glob (<code>*</code> matches any
+ * characters except '/', <code>**</code> any characters, <code>?</code> one character) or a <code>/regex/</code>, and
+ * selects a private key id. Rules are indexed by their literal prefix in a trie per field, so only the rules whose
+ * prefix matches are evaluated; the first matching rule in configuration order wins.
+ */
+public class KeySelectionRules {
+
+    private static final ConcurrentMap<String, KeySelectionRules> compiled = new ConcurrentHashMap<String, KeySelectionRules>();
+
+    enum Field {
+        ID, ADDRESS, TAG
+    }
+
+    private final List<String> source;
+    private final List<Rule> rules;
+    private final Map<Field, PrefixTrie> tries = Maps.newEnumMap(Field.class);
+    private final Map<String, BitSet> literalTags = Maps.newHashMap();
+
+    KeySelectionRules(List<String> source) {
+        this.source = ImmutableList.copyOf(source);
+        List<Rule> parsed = Lists.newArrayList();
+        for (Field field : Field.values()) {
+            tries.put(field, new PrefixTrie());
+        }
+        for (String line : source) {
+            if (line == null || line.trim().isEmpty()) {
+                continue;
+            }
+            Rule rule = Rule.parse(line.trim());
+            int index = parsed.size();
+            parsed.add(rule);
+            if (rule.field == Field.TAG && rule.literal) {
+                BitSet tagRules = literalTags.get(rule.prefix);
+                if (tagRules == null) {
+                    tagRules = new BitSet();
+                    literalTags.put(rule.prefix, tagRules);
+                }
+                tagRules.set(index);
+            } else {
+                tries.get(rule.field).add(rule.prefix, index);
+            }
+        }
+        this.rules = Collections.unmodifiableList(parsed);
+    }
+
+    public static KeySelectionRules of(PrivateKeySelectorConfiguration configuration) {
+        List<String> source = configuration.getKeySelectionRules();
+        if (source == null) {
+            source = Collections.emptyList();
+        }
+        KeySelectionRules rules = compiled.get(configuration.getId());
+        if (rules == null || !rules.source.equals(source)) {
+            rules = new KeySelectionRules(source);
+            compiled.put(configuration.getId(), rules);
+        }
+        return rules;
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * @return the private key id of the first rule matching the host, or null when no rule matches
+     */
+    public String select(Host host) {
+        String id = host.getId();
+        Object address = host.hasProperty("address") ? host.getProperty("address") : null;
+        Collection<?> tags = host.hasProperty("tags") ? host.<Collection<?>>getProperty("tags") : null;
+
+        BitSet candidates = new BitSet(rules.size());
+        tries.get(Field.ID).collect(id, candidates);
+        if (address != null) {
+            tries.get(Field.ADDRESS).collect(address.toString(), candidates);
+        }
+        if (tags != null) {
+            for (Object tag : tags) {
+                BitSet tagRules = literalTags.get(tag.toString());
+                if (tagRules != null) {
+                    candidates.or(tagRules);
+                }
+                tries.get(Field.TAG).collect(tag.toString(), candidates);
+            }
+        }
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            Rule rule = rules.get(i);
+            if (rule.matches(id, address, tags)) {
+                return rule.keyId;
+            }
+        }
+        return null;
+    }
+
+    static class Rule {
+        private final Field field;
+        private final Pattern pattern;
+        private final String prefix;
+        private final boolean literal;
+        private final String keyId;
+
+        private Rule(Field field, Pattern pattern, String prefix, boolean literal, String keyId) {
+            this.field = field;
+            this.pattern = pattern;
+            this.prefix = prefix;
+            this.literal = literal;
+            this.keyId = keyId;
+        }
+
+        static Rule parse(String line) {
+            int colon = line.indexOf(':');
+            int equals = line.lastIndexOf('=');
+            if (colon <= 0 || equals < colon) {
+                throw new DeployitException(format("Invalid key selection rule [%s], expected <id|address|tag>:<pattern>=<private key id>", line));
+            }
+            Field field;
+            try {
+                field = Field.valueOf(line.substring(0, colon).trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new DeployitException(format("Invalid key selection rule [%s], the field must be id, address or tag", line));
+            }
+            String expression = line.substring(colon + 1, equals).trim();
+            String keyId = line.substring(equals + 1).trim();
+            if (expression.isEmpty() || keyId.isEmpty()) {
+                throw new DeployitException(format("Invalid key selection rule [%s]", line));
+            }
+            try {
+                if (expression.length() > 1 && expression.startsWith("/") && expression.endsWith("/")) {
+                    return new Rule(field, Pattern.compile(expression.substring(1, expression.length() - 1)), "", false, keyId);
+                }
+                String prefix = literalPrefix(expression);
+                return new Rule(field, Pattern.compile(globToRegex(expression)), prefix, prefix.equals(expression), keyId);
+            } catch (PatternSyntaxException e) {
+                throw new DeployitException(format("Invalid key selection rule [%s]: %s", line, e.getDescription()));
+            }
+        }
+
+        boolean matches(String id, Object address, Collection<?> tags) {
+            switch (field) {
+                case ID:
+                    return pattern.matcher(id).matches();
+                case ADDRESS:
+                    return address != null && pattern.matcher(address.toString()).matches();
+                default:
+                    if (tags != null) {
+                        for (Object tag : tags) {
+                            if (pattern.matcher(tag.toString()).matches()) {
+                                return true;
+                            }
+                        }
+                    }
+                    return false;
+            }
+        }
+
+        private static String literalPrefix(String glob) {
+            int i = 0;
+            while (i < glob.length() && glob.charAt(i) != '*' && glob.charAt(i) != '?') {
+                i++;
+            }
+            return glob.substring(0, i);
+        }
+
+        private static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    if (c == '?') {
+                        regex.append('.');
+                    } else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return regex.toString();
+        }
+    }
+}
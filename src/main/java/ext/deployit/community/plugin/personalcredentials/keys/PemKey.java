@@ -0,0 +1,162 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.keys;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openssl.PEMEncryptedKeyPair;
+import org.bouncycastle.openssl.PEMException;
+import org.bouncycastle.openssl.PEMKeyPair;
+import org.bouncycastle.openssl.PEMParser;
+import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
+import org.bouncycastle.openssl.jcajce.JceOpenSSLPKCS8DecryptorProviderBuilder;
+import org.bouncycastle.openssl.jcajce.JcePEMDecryptorProviderBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.pkcs.PKCS8EncryptedPrivateKeyInfo;
+import org.bouncycastle.pkcs.PKCSException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Files;
+import com.hierynomus.sshj.common.KeyDecryptionFailedException;
+import com.hierynomus.sshj.userauth.keyprovider.OpenSSHKeyV1KeyFile;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import net.schmizz.sshj.userauth.keyprovider.KeyFormat;
+import net.schmizz.sshj.userauth.keyprovider.KeyProviderUtil;
+import net.schmizz.sshj.userauth.password.PasswordUtils;
+
+/**
+ * A private key file validated with the key readers of the SSH library used by Overthere: sshj for the OpenSSH format,
+ * BouncyCastle for the traditional OpenSSL format (optionally encrypted with a Proc-Type/DEK-Info header) and PKCS#8.
+ * An unencrypted key is fully decoded when parsed; the passphrase of an encrypted key is verified by decrypting it.
+ */
+class PemKey {
+
+    private static final BouncyCastleProvider PROVIDER = new BouncyCastleProvider();
+
+    enum Format {
+        TRADITIONAL, PKCS8, ENCRYPTED_PKCS8, OPENSSH
+    }
+
+    private final File file;
+    private final Format format;
+    private final Object encryptedKey;
+    private final boolean encrypted;
+
+    private PemKey(File file, Format format, Object encryptedKey, boolean encrypted) {
+        this.file = file;
+        this.format = format;
+        this.encryptedKey = encryptedKey;
+        this.encrypted = encrypted;
+    }
+
+    static PemKey parse(File file) {
+        KeyFormat keyFormat;
+        try {
+            keyFormat = KeyProviderUtil.detectKeyFileFormat(file);
+        } catch (IOException e) {
+            throw new DeployitException(format("Cannot read private key file %s", file), e);
+        }
+        if (keyFormat == KeyFormat.OpenSSHv1) {
+            return parseOpenSsh(file);
+        }
+        if (keyFormat != KeyFormat.PKCS8) {
+            throw new DeployitException(format("File %s is not a PEM private key", file));
+        }
+        Object object;
+        try (Reader reader = Files.newReader(file, StandardCharsets.US_ASCII); PEMParser parser = new PEMParser(reader)) {
+            object = parser.readObject();
+        } catch (IOException e) {
+            throw new DeployitException(format("Private key file %s is not a valid PEM private key: %s", file, e.getMessage()), e);
+        }
+        try {
+            if (object instanceof PEMKeyPair) {
+                converter().getKeyPair((PEMKeyPair) object);
+                return new PemKey(file, Format.TRADITIONAL, null, false);
+            } else if (object instanceof PrivateKeyInfo) {
+                converter().getPrivateKey((PrivateKeyInfo) object);
+                return new PemKey(file, Format.PKCS8, null, false);
+            }
+        } catch (PEMException e) {
+            throw new DeployitException(format("Private key file %s is not a valid private key: %s", file, e.getMessage()), e);
+        }
+        if (object instanceof PEMEncryptedKeyPair) {
+            return new PemKey(file, Format.TRADITIONAL, object, true);
+        } else if (object instanceof PKCS8EncryptedPrivateKeyInfo) {
+            return new PemKey(file, Format.ENCRYPTED_PKCS8, object, true);
+        } else if (object == null) {
+            throw new DeployitException(format("File %s is not a PEM private key", file));
+        }
+        throw new DeployitException(format("File %s contains a %s, not a private key", file, object.getClass().getSimpleName()));
+    }
+
+    private static PemKey parseOpenSsh(File file) {
+        OpenSSHKeyV1KeyFile keyFile = new OpenSSHKeyV1KeyFile();
+        keyFile.init(file);
+        try {
+            keyFile.getPrivate();
+            return new PemKey(file, Format.OPENSSH, null, false);
+        } catch (KeyDecryptionFailedException e) {
+            return new PemKey(file, Format.OPENSSH, null, true);
+        } catch (IOException | RuntimeException e) {
+            throw new DeployitException(format("Private key file %s is not a valid OpenSSH key: %s", file, e.getMessage()), e);
+        }
+    }
+
+    Format getFormat() {
+        return format;
+    }
+
+    boolean isEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * @return true when the passphrase decrypts the key, always true for a key that is not encrypted
+     */
+    boolean checkPassphrase(String passphrase) {
+        if (!encrypted) {
+            return true;
+        }
+        try {
+            switch (format) {
+                case TRADITIONAL:
+                    PEMEncryptedKeyPair keyPair = (PEMEncryptedKeyPair) encryptedKey;
+                    converter().getKeyPair(keyPair.decryptKeyPair(new JcePEMDecryptorProviderBuilder().setProvider(PROVIDER).build(passphrase.toCharArray())));
+                    return true;
+                case ENCRYPTED_PKCS8:
+                    PKCS8EncryptedPrivateKeyInfo info = (PKCS8EncryptedPrivateKeyInfo) encryptedKey;
+                    converter().getPrivateKey(info.decryptPrivateKeyInfo(new JceOpenSSLPKCS8DecryptorProviderBuilder().setProvider(PROVIDER).build(passphrase.toCharArray())));
+                    return true;
+                default:
+                    OpenSSHKeyV1KeyFile keyFile = new OpenSSHKeyV1KeyFile();
+                    keyFile.init(file, PasswordUtils.createOneOff(passphrase.toCharArray()));
+                    keyFile.getPrivate();
+                    return true;
+            }
+        } catch (IOException | OperatorCreationException | PKCSException e) {
+            logger.debug("Passphrase does not decrypt private key file {}: {}", file, e.getMessage());
+            return false;
+        }
+    }
+
+    private static JcaPEMKeyConverter converter() {
+        return new JcaPEMKeyConverter().setProvider(PROVIDER);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PemKey.class);
+}
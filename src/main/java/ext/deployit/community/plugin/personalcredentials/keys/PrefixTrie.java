@@ -0,0 +1,61 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.keys;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of literal prefixes, each prefix pointing to the indexes of the rules it belongs to.
+ * {@link #collect(String, BitSet)} marks the rules of every prefix of a value in one walk over the value.
+ */
+class PrefixTrie {
+
+    private final Node root = new Node();
+
+    void add(String prefix, int ruleIndex) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.rules.add(ruleIndex);
+    }
+
+    void collect(String value, BitSet candidates) {
+        Node node = root;
+        mark(node, candidates);
+        for (int i = 0; i < value.length() && node != null; i++) {
+            node = node.children.get(value.charAt(i));
+            if (node != null) {
+                mark(node, candidates);
+            }
+        }
+    }
+
+    private static void mark(Node node, BitSet candidates) {
+        for (Integer rule : node.rules) {
+            candidates.set(rule);
+        }
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<Character, Node>(4);
+        private final List<Integer> rules = new ArrayList<Integer>(1);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.keys;
+
+import static java.lang.String.format;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableMap;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialCipher;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+
+/**
+ * Index of the private keys of a {@link PrivateKeySelectorConfiguration}. All key files of a configuration are read and
+ * validated once, when the configuration is first used or changed, so selecting a key is a map lookup. Key files
+ * are checked for modification at most every {@link #RECHECK_INTERVAL_MILLIS}. Passphrases that decrypted a key are
+ * remembered as a keyed hash, so a passphrase is verified once per key.
+ */
+public class PrivateKeyStore {
+
+    public static final long RECHECK_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("xlc.personalcredentials.privateKeyStore.recheckInterval", 60));
+
+    private static final ConcurrentMap<String, Index> indexes = new ConcurrentHashMap<String, Index>();
+
+    /**
+     * Returns the key file selected by the key id, after checking that the key is valid and the passphrase decrypts it.
+     */
+    public static String select(PrivateKeySelectorConfiguration configuration, String keyId, String passphrase) {
+        Index index = index(configuration);
+        KeyEntry entry = index.entries.get(keyId);
+        if (entry == null) {
+            throw new DeployitException(format("Key selector not found or returned null value : %s", keyId));
+        }
+        if (entry.error != null) {
+            throw new DeployitException(format("Private key %s (%s) is invalid: %s", keyId, entry.fileName, entry.error));
+        }
+        if (passphrase != null && !entry.checkPassphrase(passphrase)) {
+            throw new DeployitException(format("The passphrase does not decrypt private key %s", keyId));
+        }
+        return entry.fileName;
+    }
+
+    public static void invalidate(PrivateKeySelectorConfiguration configuration) {
+        indexes.remove(configuration.getId());
+    }
+
+    private static Index index(PrivateKeySelectorConfiguration configuration) {
+        String id = configuration.getId();
+        Map<String, String> privateKeyIds = configuration.getPrivateKeyIds();
+        Index index = indexes.get(id);
+        long now = System.currentTimeMillis();
+        if (index != null && index.privateKeyIds.equals(privateKeyIds)) {
+            if (now - index.checkedAt < RECHECK_INTERVAL_MILLIS) {
+                return index;
+            }
+            long start = PlanningMetrics.start();
+            boolean modified = index.isModified();
+            PlanningMetrics.record(Phase.KEY_FILE_IO, start);
+            if (!modified) {
+                index.checkedAt = now;
+                return index;
+            }
+            logger.info("Private key files of {} changed on disk, reloading", id);
+        }
+        long start = PlanningMetrics.start();
+        index = new Index(privateKeyIds);
+        PlanningMetrics.record(Phase.KEY_FILE_IO, start);
+        indexes.put(id, index);
+        logger.debug("Indexed {} private key(s) of {}", index.entries.size(), id);
+        return index;
+    }
+
+    private static class Index {
+        private final Map<String, String> privateKeyIds;
+        private final Map<String, KeyEntry> entries;
+        private volatile long checkedAt = System.currentTimeMillis();
+
+        Index(Map<String, String> privateKeyIds) {
+            this.privateKeyIds = ImmutableMap.copyOf(privateKeyIds);
+            Map<String, KeyEntry> loaded = new HashMap<String, KeyEntry>();
+            for (Map.Entry<String, String> keyId : privateKeyIds.entrySet()) {
+                KeyEntry entry = new KeyEntry(keyId.getValue());
+                if (entry.error != null) {
+                    logger.warn("Private key {} ({}) is invalid: {}", keyId.getKey(), keyId.getValue(), entry.error);
+                }
+                loaded.put(keyId.getKey(), entry);
+            }
+            this.entries = Collections.unmodifiableMap(loaded);
+        }
+
+        boolean isModified() {
+            for (KeyEntry entry : entries.values()) {
+                if (entry.isModified()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class KeyEntry {
+        private final String fileName;
+        private final long lastModified;
+        private final long length;
+        private final PemKey key;
+        private final String error;
+        private final Set<String> validPassphrases = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        KeyEntry(String fileName) {
+            this.fileName = fileName;
+            File file = new File(fileName);
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            PemKey parsed = null;
+            String failure = null;
+            if (!file.isFile()) {
+                failure = "File not found";
+            } else {
+                try {
+                    parsed = PemKey.parse(file);
+                } catch (DeployitException e) {
+                    failure = e.getMessage();
+                } catch (LinkageError e) {
+                    // the key readers are compiled against sshj 0.35 and BouncyCastle 1.72, as bundled by XL Deploy 7.0;
+                    // with other versions the key file is only checked for existence and the SSH connection reports bad keys
+                    logger.warn("Cannot validate private key file {} with the SSH library of this server, skipping validation: {}", fileName, e.toString());
+                }
+            }
+            this.key = parsed;
+            this.error = failure;
+        }
+
+        boolean isModified() {
+            File file = new File(fileName);
+            return file.lastModified() != lastModified || file.length() != length;
+        }
+
+        boolean checkPassphrase(String passphrase) {
+            if (key == null || !key.isEncrypted()) {
+                return true;
+            }
+            String hash = CredentialCipher.mac(passphrase);
+            if (validPassphrases.contains(hash)) {
+                return true;
+            }
+            try {
+                if (!key.checkPassphrase(passphrase)) {
+                    return false;
+                }
+            } catch (LinkageError e) {
+                logger.warn("Cannot decrypt private key file {} with the SSH library of this server, skipping passphrase validation: {}", fileName, e.toString());
+                return true;
+            }
+            validPassphrases.add(hash);
+            return true;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PrivateKeyStore.class);
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.xebialabs.deployit.engine.spi.event.DeployitEventListener;
+import com.xebialabs.deployit.engine.spi.event.SystemStartedEvent;
+import com.xebialabs.deployit.plugin.api.reflect.Descriptor;
+import com.xebialabs.deployit.plugin.api.reflect.DescriptorRegistry;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+
+import ext.deployit.community.plugin.personalcredentials.audit.AuditLog;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptEnginePool;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptEngines;
+
+import nl.javadude.t2bus.Subscribe;
+
+@DeployitEventListener
+public class PersonalCredentialsEventListener {
+
+    @Subscribe
+    public void onSystemStarted(SystemStartedEvent event) {
+        PlanningMetrics.register();
+        AuditLog.start();
+        warmUpScriptEngines();
+    }
+
+    /**
+     * Warms the engine pool of the default scriptClasspath when the CT_CUSTOM_SCRIPT properties are enabled on udm.DeployedApplication.
+     */
+    private static void warmUpScriptEngines() {
+        Descriptor descriptor = DescriptorRegistry.getDescriptor(Type.valueOf("udm.DeployedApplication"));
+        if (descriptor == null || descriptor.getPropertyDescriptor("scriptPath") == null) {
+            logger.debug("Custom script credentials not enabled, no script engine warm-up");
+            return;
+        }
+        String scriptClasspath = "";
+        PropertyDescriptor classpathDescriptor = descriptor.getPropertyDescriptor("scriptClasspath");
+        if (classpathDescriptor != null && classpathDescriptor.getDefaultValue() != null) {
+            scriptClasspath = classpathDescriptor.getDefaultValue().toString();
+        }
+        String scriptEngine = null;
+        PropertyDescriptor engineDescriptor = descriptor.getPropertyDescriptor("scriptEngine");
+        if (engineDescriptor != null && engineDescriptor.getDefaultValue() != null) {
+            scriptEngine = engineDescriptor.getDefaultValue().toString();
+        }
+        Object scriptPath = descriptor.getPropertyDescriptor("scriptPath").getDefaultValue();
+        String engineName;
+        try {
+            engineName = ScriptEngines.resolve(scriptEngine, scriptPath == null ? "" : scriptPath.toString());
+        } catch (RuntimeException e) {
+            logger.warn("Cannot determine the script engine, no script engine warm-up: {}", e.getMessage());
+            return;
+        }
+        if (ScriptEngines.JAVA.equals(engineName)) {
+            return;
+        }
+        logger.info("Warming up {} script engines for classpath [{}]", engineName, scriptClasspath);
+        ScriptEnginePool.warmUp(engineName, scriptClasspath);
+    }
+
+    protected static final Logger logger = LoggerFactory.getLogger(PersonalCredentialsEventListener.class);
+}
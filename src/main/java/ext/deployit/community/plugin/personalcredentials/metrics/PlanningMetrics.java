@@ -0,0 +1,272 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ext.deployit.community.plugin.personalcredentials.audit.AuditLog;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptExecutor;
+
+/**
+ * Latency histograms per planning phase and counters of the plugin, published over JMX.
+ * Disabled by default: enable with the <code>xlc.personalcredentials.metrics.enabled</code> system property or the
+ * <code>Enabled</code> MBean attribute. While disabled, {@link #start()} does not read the clock and
+ * {@link #record(Phase, long)} and {@link #increment(Counter, long)} return after a single volatile read.
+ */
+public class PlanningMetrics implements PlanningMetricsMBean {
+
+    public static final String OBJECT_NAME = "ext.deployit.community.plugin.personalcredentials:type=PlanningMetrics";
+    public static final long LOG_INTERVAL_SECONDS = Long.getLong("xlc.personalcredentials.metrics.logInterval", 0);
+
+    public enum Phase {
+        PLANNING, HOST_RESOLUTION, CREDENTIAL_INJECTION, EXECUTION_RESOLUTION, SCRIPT_ENGINE_STARTUP, SCRIPT_ENGINE_WAIT, SCRIPT_EVALUATION, KEY_FILE_IO, CONNECTION_CHECK
+    }
+
+    public enum Counter {
+        HOSTS_PROCESSED, CHECK_STEPS_EMITTED, SCRIPT_FAILURES, SCRIPT_CACHE_HITS, CONNECTION_CHECK_CACHE_HITS, INJECTION_MEMO_HITS
+    }
+
+    private static final PlanningMetrics instance = new PlanningMetrics();
+
+    private static volatile boolean enabled = Boolean.getBoolean("xlc.personalcredentials.metrics.enabled");
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<Phase, LatencyHistogram>(Phase.class);
+    private final Map<Counter, AtomicLong> counters = new EnumMap<Counter, AtomicLong>(Counter.class);
+    private ScheduledExecutorService summaryExecutor;
+
+    private PlanningMetrics() {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new AtomicLong());
+        }
+    }
+
+    public static PlanningMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the start time of a phase to pass to {@link #record(Phase, long)}, or 0 when the metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void record(Phase phase, long start) {
+        if (start != 0 && enabled) {
+            instance.histograms.get(phase).record(System.nanoTime() - start);
+        }
+    }
+
+    public static void recordNanos(Phase phase, long nanos) {
+        if (enabled) {
+            instance.histograms.get(phase).record(nanos);
+        }
+    }
+
+    public static void increment(Counter counter, long delta) {
+        if (enabled) {
+            instance.counters.get(counter).addAndGet(delta);
+        }
+    }
+
+    /**
+     * Registers the MBean and, when <code>xlc.personalcredentials.metrics.logInterval</code> is set, schedules the
+     * periodic log summary.
+     */
+    public static synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(instance, name);
+                logger.info("Registered MBean {} (metrics {})", OBJECT_NAME, enabled ? "enabled" : "disabled");
+            }
+        } catch (JMException e) {
+            logger.warn("Cannot register MBean {}", OBJECT_NAME, e);
+        }
+        if (LOG_INTERVAL_SECONDS > 0 && instance.summaryExecutor == null) {
+            instance.summaryExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("personal-credentials-metrics-%d").setDaemon(true).build());
+            instance.summaryExecutor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    if (enabled) {
+                        logger.info(instance.getSummary());
+                    }
+                }
+            }, LOG_INTERVAL_SECONDS, LOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        PlanningMetrics.enabled = enabled;
+    }
+
+    @Override
+    public String[] getPhases() {
+        Phase[] phases = Phase.values();
+        String[] names = new String[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            names[i] = phases[i].name();
+        }
+        return names;
+    }
+
+    @Override
+    public long getPhaseCount(String phase) {
+        return histogram(phase).getCount();
+    }
+
+    @Override
+    public double getPhaseMeanMillis(String phase) {
+        return histogram(phase).getMeanMillis();
+    }
+
+    @Override
+    public double getPhasePercentileMillis(String phase, double percentile) {
+        return histogram(phase).getPercentileMillis(percentile);
+    }
+
+    @Override
+    public double getPhaseMaxMillis(String phase) {
+        return histogram(phase).getMaxMillis();
+    }
+
+    @Override
+    public long getHostsProcessed() {
+        return counters.get(Counter.HOSTS_PROCESSED).get();
+    }
+
+    @Override
+    public long getCheckStepsEmitted() {
+        return counters.get(Counter.CHECK_STEPS_EMITTED).get();
+    }
+
+    @Override
+    public long getScriptFailures() {
+        return counters.get(Counter.SCRIPT_FAILURES).get();
+    }
+
+    @Override
+    public long getScriptCacheHits() {
+        return counters.get(Counter.SCRIPT_CACHE_HITS).get();
+    }
+
+    @Override
+    public long getConnectionCheckCacheHits() {
+        return counters.get(Counter.CONNECTION_CHECK_CACHE_HITS).get();
+    }
+
+    @Override
+    public long getInjectionMemoHits() {
+        return counters.get(Counter.INJECTION_MEMO_HITS).get();
+    }
+
+    @Override
+    public int getAuditQueueDepth() {
+        return AuditLog.getQueueDepth();
+    }
+
+    @Override
+    public long getAuditRecordsDropped() {
+        return AuditLog.getDropped();
+    }
+
+    @Override
+    public int getScriptQueueDepth() {
+        return ScriptExecutor.getQueueDepth();
+    }
+
+    @Override
+    public int getActiveScripts() {
+        return ScriptExecutor.getActiveCount();
+    }
+
+    @Override
+    public long getScriptTimeouts() {
+        return ScriptExecutor.getTimeoutCount();
+    }
+
+    @Override
+    public int getAbandonedScripts() {
+        return ScriptExecutor.getAbandonedCount();
+    }
+
+    @Override
+    public long getScriptRejections() {
+        return ScriptExecutor.getRejectedCount();
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder("Personal credentials planning metrics:");
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram histogram = histograms.get(phase);
+            if (histogram.getCount() > 0) {
+                summary.append(String.format("%n  %-21s %s", phase, histogram));
+            }
+        }
+        for (Counter counter : Counter.values()) {
+            summary.append(String.format("%n  %-27s %d", counter, counters.get(counter).get()));
+        }
+        summary.append(String.format("%n  %-27s %d active, %d queued, %d timed out, %d abandoned, %d rejected", "SCRIPT_EXECUTOR",
+                getActiveScripts(), getScriptQueueDepth(), getScriptTimeouts(), getAbandonedScripts(), getScriptRejections()));
+        if (AuditLog.isEnabled()) {
+            summary.append(String.format("%n  %-27s %d queued, %d written, %d dropped", "AUDIT_LOG",
+                    getAuditQueueDepth(), AuditLog.getWritten(), getAuditRecordsDropped()));
+        }
+        return summary.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters.values()) {
+            counter.set(0);
+        }
+    }
+
+    private LatencyHistogram histogram(String phase) {
+        try {
+            return histograms.get(Phase.valueOf(phase.trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Unknown phase %s, expected one of %s", phase, Arrays.toString(Phase.values())));
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanningMetrics.class);
+}
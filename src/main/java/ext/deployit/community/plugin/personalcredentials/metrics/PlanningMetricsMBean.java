@@ -0,0 +1,60 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.metrics;
+
+/**
+ * JMX view of {@link PlanningMetrics}, registered as <code>ext.deployit.community.plugin.personalcredentials:type=PlanningMetrics</code>.
+ */
+public interface PlanningMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    String[] getPhases();
+
+    long getPhaseCount(String phase);
+
+    double getPhaseMeanMillis(String phase);
+
+    double getPhasePercentileMillis(String phase, double percentile);
+
+    double getPhaseMaxMillis(String phase);
+
+    long getHostsProcessed();
+
+    long getCheckStepsEmitted();
+
+    long getScriptFailures();
+
+    long getScriptCacheHits();
+
+    long getConnectionCheckCacheHits();
+
+    long getInjectionMemoHits();
+
+    int getScriptQueueDepth();
+
+    int getActiveScripts();
+
+    long getScriptTimeouts();
+
+    int getAbandonedScripts();
+
+    long getScriptRejections();
+
+    int getAuditQueueDepth();
+
+    long getAuditRecordsDropped();
+
+    String getSummary();
+
+    void reset();
+}
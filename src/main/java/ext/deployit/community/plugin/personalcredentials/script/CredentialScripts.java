@@ -0,0 +1,49 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+/**
+ * Instantiates Java credential scripts by class name, once per class.
+ */
+public class CredentialScripts {
+
+    private static final ConcurrentMap<String, CredentialScript> scripts = new ConcurrentHashMap<String, CredentialScript>();
+
+    public static CredentialScript get(String className) {
+        CredentialScript script = scripts.get(className);
+        if (script == null) {
+            script = instantiate(className);
+            CredentialScript existing = scripts.putIfAbsent(className, script);
+            if (existing != null) {
+                script = existing;
+            }
+        }
+        return script;
+    }
+
+    private static CredentialScript instantiate(String className) {
+        try {
+            Class<?> scriptClass = Class.forName(className, true, CredentialScripts.class.getClassLoader());
+            if (!CredentialScript.class.isAssignableFrom(scriptClass)) {
+                throw new DeployitException(String.format("Class %s does not implement %s", className, CredentialScript.class.getName()));
+            }
+            return (CredentialScript) scriptClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            throw new DeployitException(String.format("Credential script class %s not found", className), e);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new DeployitException(String.format("Cannot instantiate credential script %s", className), e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static java.lang.String.format;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialOverlay;
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+
+/**
+ * The hosts given to a custom credential script, indexed by id, address, operating system and tag, with bulk setters
+ * for the credentials. Bound to the <code>hostIndex</code> script variable so scripts look hosts up and assign
+ * credentials in Java rather than in interpreted loops. The index is read-only and can be shared by concurrent scripts.
+ */
+public class HostIndex {
+
+    private final ImmutableMap<String, Host> byId;
+    private final ImmutableListMultimap<String, Host> byAddress;
+    private final ImmutableListMultimap<String, Host> byOs;
+    private final ImmutableListMultimap<String, Host> byTag;
+
+    public HostIndex(Collection<Host> hosts) {
+        ImmutableMap.Builder<String, Host> ids = ImmutableMap.builder();
+        ImmutableListMultimap.Builder<String, Host> addresses = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, Host> oses = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, Host> tags = ImmutableListMultimap.builder();
+        for (Host host : hosts) {
+            ids.put(host.getId(), host);
+            Object address = host.hasProperty(HostCredentials.ADDRESS) ? host.getProperty(HostCredentials.ADDRESS) : null;
+            if (address != null) {
+                addresses.put(address.toString(), host);
+            }
+            if (host.getOs() != null) {
+                oses.put(host.getOs().name(), host);
+            }
+            if (host.getTags() != null) {
+                for (String tag : host.getTags()) {
+                    tags.put(tag, host);
+                }
+            }
+        }
+        this.byId = ids.build();
+        this.byAddress = addresses.build();
+        this.byOs = oses.build();
+        this.byTag = tags.build();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public Collection<String> getIds() {
+        return byId.keySet();
+    }
+
+    /**
+     * @return the host with the id, or null
+     */
+    public Host byId(String id) {
+        return byId.get(id);
+    }
+
+    public List<Host> byAddress(String address) {
+        return byAddress.get(address);
+    }
+
+    /**
+     * @param os the name of an operating system family, e.g. UNIX or WINDOWS
+     */
+    public List<Host> byOs(String os) {
+        return byOs.get(os);
+    }
+
+    public List<Host> byTag(String tag) {
+        return byTag.get(tag);
+    }
+
+    /**
+     * Sets credentials by host id. The values are {@link HostCredentials} or maps with the 'username', 'password',
+     * 'privateKeyFile' and 'passphrase' keys; null values leave the host property unchanged. Nothing is written when
+     * an id is not one of the indexed hosts.
+     *
+     * @return the number of hosts that had at least one property written
+     */
+    public int setCredentials(Map<String, ?> credentialsById) {
+        CredentialOverlay overlay = new CredentialOverlay();
+        List<String> unknown = Lists.newArrayList();
+        for (Map.Entry<String, ?> entry : credentialsById.entrySet()) {
+            Host host = byId.get(entry.getKey());
+            if (host == null) {
+                unknown.add(entry.getKey());
+            } else {
+                overlay.put(host, toCredentials(entry.getKey(), entry.getValue()));
+            }
+        }
+        if (!unknown.isEmpty()) {
+            throw new DeployitException(format("Cannot set credentials of unknown host(s) %s", unknown));
+        }
+        return overlay.apply();
+    }
+
+    /**
+     * Sets credentials on all hosts with the given addresses, with values as in {@link #setCredentials(Map)}.
+     * Addresses no host has are ignored.
+     *
+     * @return the number of hosts that had at least one property written
+     */
+    public int setCredentialsByAddress(Map<String, ?> credentialsByAddress) {
+        CredentialOverlay overlay = new CredentialOverlay();
+        for (Map.Entry<String, ?> entry : credentialsByAddress.entrySet()) {
+            List<Host> hosts = byAddress.get(entry.getKey());
+            if (hosts.isEmpty()) {
+                continue;
+            }
+            HostCredentials credentials = toCredentials(entry.getKey(), entry.getValue());
+            for (Host host : hosts) {
+                overlay.put(host, credentials);
+            }
+        }
+        return overlay.apply();
+    }
+
+    /**
+     * Sets the same username and password on all given hosts, for instance the result of {@link #byOs(String)} or
+     * {@link #byTag(String)}.
+     *
+     * @return the number of hosts that had at least one property written
+     */
+    public int setUsernameAndPassword(Collection<Host> hosts, String username, String password) {
+        return setAll(hosts, new HostCredentials(username, password, null, null));
+    }
+
+    /**
+     * Sets the same private key file and passphrase on all given hosts.
+     *
+     * @return the number of hosts that had at least one property written
+     */
+    public int setPrivateKey(Collection<Host> hosts, String privateKeyFile, String passphrase) {
+        return setAll(hosts, new HostCredentials(null, null, privateKeyFile, passphrase));
+    }
+
+    private static int setAll(Collection<Host> hosts, HostCredentials credentials) {
+        CredentialOverlay overlay = new CredentialOverlay();
+        for (Host host : hosts == null ? Collections.<Host>emptyList() : hosts) {
+            overlay.put(host, credentials);
+        }
+        return overlay.apply();
+    }
+
+    private static HostCredentials toCredentials(String key, Object value) {
+        if (value instanceof HostCredentials) {
+            return (HostCredentials) value;
+        }
+        if (value instanceof Map) {
+            return HostCredentials.fromMap((Map<?, ?>) value);
+        }
+        throw new DeployitException(format("Credentials of %s must be a map or HostCredentials, got %s", key,
+                value == null ? "null" : value.getClass().getName()));
+    }
+}
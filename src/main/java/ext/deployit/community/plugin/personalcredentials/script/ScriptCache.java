@@ -0,0 +1,125 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of script sources keyed by script path. A script overridden in the ./ext directory is checked for
+ * modification (last modified time and length) on every lookup and re-read only when it changed; a script
+ * loaded from the classpath cannot change without a restart and is read once.
+ */
+public class ScriptCache {
+
+	private final static ConcurrentMap<String, ScriptSource> sources = new ConcurrentHashMap<String, ScriptSource>();
+
+	private final static AtomicLong hits = new AtomicLong();
+	private final static AtomicLong reloads = new AtomicLong();
+
+	public static ScriptSource get(String scriptName) {
+		Stamp stamp = currentStamp(scriptName);
+		ScriptSource source = sources.get(scriptName);
+		if (source != null && source.stamp.equals(stamp)) {
+			hits.incrementAndGet();
+			return source;
+		}
+		reloads.incrementAndGet();
+		logger.debug("Loading script {} ({})", scriptName, stamp);
+		source = new ScriptSource(scriptName, ScriptRunner.loadScript(scriptName), stamp);
+		sources.put(scriptName, source);
+		return source;
+	}
+
+	/**
+	 * Returns true when the given source is still the current version of its script.
+	 */
+	public static boolean isCurrent(ScriptSource source) {
+		return source.stamp.equals(currentStamp(source.name));
+	}
+
+	public static void invalidateAll() {
+		sources.clear();
+	}
+
+	public static long getHitCount() {
+		return hits.get();
+	}
+
+	public static long getReloadCount() {
+		return reloads.get();
+	}
+
+	private static Stamp currentStamp(String scriptName) {
+		File f = new File(new File(".", ScriptRunner.SCRIPT_PATH), scriptName);
+		if (f.isFile()) {
+			return new Stamp(f.lastModified(), f.length());
+		}
+		return Stamp.RESOURCE;
+	}
+
+	public static final class ScriptSource {
+		private final String name;
+		private final String script;
+		private final Stamp stamp;
+
+		ScriptSource(String name, String script, Stamp stamp) {
+			this.name = name;
+			this.script = script;
+			this.stamp = stamp;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getScript() {
+			return script;
+		}
+	}
+
+	static final class Stamp {
+		static final Stamp RESOURCE = new Stamp(-1, -1);
+
+		private final long lastModified;
+		private final long length;
+
+		Stamp(long lastModified, long length) {
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Stamp)) {
+				return false;
+			}
+			Stamp other = (Stamp) o;
+			return lastModified == other.lastModified && length == other.length;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (lastModified ^ (lastModified >>> 32)) * 31 + (int) length;
+		}
+
+		@Override
+		public String toString() {
+			return this == RESOURCE ? "classpath" : String.format("modified=%d, length=%d", lastModified, length);
+		}
+	}
+
+	protected static final Logger logger = LoggerFactory.getLogger(ScriptCache.class);
+}
@@ -0,0 +1,379 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.nullToEmpty;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptCache.ScriptSource;
+
+/**
+ * Bounded pool of JSR-223 script engines, one pool per engine and script classpath.
+ * Engines are created with the library scripts of the classpath already evaluated, so a borrower
+ * only has to evaluate its own script. An engine is recycled after {@link #MAX_USES} borrows, when the
+ * borrower reports it as broken or when one of its library scripts changed on disk. A borrower waits at most
+ * {@link #BORROW_TIMEOUT_SECONDS} for an engine when all engines are in use.
+ * Each engine keeps the scripts it compiled, so an unchanged script is only compiled once per engine.
+ */
+public class ScriptEnginePool {
+	public final static String ENGINE_NAME = "jython";
+
+	public final static int POOL_SIZE = Integer.getInteger("xlc.personalcredentials.scriptEnginePool.size", 4);
+	public final static int MAX_USES  = Integer.getInteger("xlc.personalcredentials.scriptEnginePool.maxUses", 100);
+	public final static int BORROW_TIMEOUT_SECONDS = Integer.getInteger("xlc.personalcredentials.scriptEnginePool.borrowTimeout", 60);
+
+	private final static ConcurrentMap<String, ScriptEnginePool> pools = new ConcurrentHashMap<String, ScriptEnginePool>();
+
+	private final static ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("personal-credentials-engine-warmup-%d").setDaemon(true).build());
+
+	private final String engineName;
+	private final String scriptClasspath;
+	private final List<String> libraryScripts;
+	private final int size;
+	private final BlockingQueue<PooledEngine> idle = new LinkedBlockingQueue<PooledEngine>();
+	private final ConcurrentMap<ScriptEngine, PooledEngine> borrowed = new ConcurrentHashMap<ScriptEngine, PooledEngine>();
+	private final Set<ScriptEngine> discarded = Collections.newSetFromMap(new ConcurrentHashMap<ScriptEngine, Boolean>());
+	private final AtomicInteger created = new AtomicInteger();
+	private final AtomicLong borrowCount = new AtomicLong();
+	private final AtomicLong recycleCount = new AtomicLong();
+	private final AtomicLong compileHits = new AtomicLong();
+	private final AtomicLong compileMisses = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	ScriptEnginePool(String engineName, String scriptClasspath, int size) {
+		this.engineName = engineName;
+		this.scriptClasspath = scriptClasspath;
+		this.libraryScripts = ScriptRunner.getLibraryScripts(scriptClasspath);
+		this.size = size;
+	}
+
+	public static ScriptEnginePool forClasspath(String scriptClasspath) {
+		return forEngine(ENGINE_NAME, scriptClasspath);
+	}
+
+	public static ScriptEnginePool forEngine(String engineName, String scriptClasspath) {
+		String classpath = nullToEmpty(scriptClasspath).trim();
+		String key = engineName + ":" + classpath;
+		ScriptEnginePool pool = pools.get(key);
+		if (pool == null) {
+			ScriptEnginePool newPool = new ScriptEnginePool(engineName, classpath, POOL_SIZE);
+			pool = pools.putIfAbsent(key, newPool);
+			if (pool == null) {
+				pool = newPool;
+			}
+		}
+		return pool;
+	}
+
+	public static Collection<ScriptEnginePool> getPools() {
+		return pools.values();
+	}
+
+	/**
+	 * Fills the pool of the given classpath in the background, so the first plans do not pay for the Jython startup.
+	 */
+	public static void warmUp(String scriptClasspath) {
+		warmUp(ENGINE_NAME, scriptClasspath);
+	}
+
+	/**
+	 * Fills the pool of the given engine and classpath in the background, so the first plans do not pay for the engine startup.
+	 */
+	public static void warmUp(String engineName, String scriptClasspath) {
+		final ScriptEnginePool pool = forEngine(engineName, scriptClasspath);
+		warmUpExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				pool.fill();
+			}
+		});
+	}
+
+	void fill() {
+		while (reserve()) {
+			try {
+				idle.offer(createEngine());
+			} catch (RuntimeException e) {
+				created.decrementAndGet();
+				logger.warn("Cannot warm up {} script engine for classpath [{}]", engineName, scriptClasspath, e);
+				return;
+			}
+		}
+		logger.info("{} script engine pool for classpath [{}] warmed up with {} engine(s)", engineName, scriptClasspath, created.get());
+	}
+
+	public ScriptEngine borrow() {
+		return borrow(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Borrows an engine, waiting at most the given time when all engines are in use.
+	 * @throws ScriptExecutionException when no engine became available in time
+	 */
+	public ScriptEngine borrow(long timeout, TimeUnit unit) {
+		long start = System.nanoTime();
+		PooledEngine engine = idle.poll();
+		while (engine != null && engine.isStale()) {
+			logger.debug("Library scripts of classpath [{}] changed, recycling script engine", scriptClasspath);
+			recycleCount.incrementAndGet();
+			created.decrementAndGet();
+			engine = idle.poll();
+		}
+		if (engine == null) {
+			if (reserve()) {
+				try {
+					engine = createEngine();
+				} catch (RuntimeException e) {
+					created.decrementAndGet();
+					throw e;
+				}
+			} else {
+				try {
+					engine = idle.poll(timeout, unit);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new DeployitException("Interrupted while waiting for a script engine", e);
+				}
+				if (engine == null) {
+					long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					throw new ScriptExecutionException(String.format("No %s script engine for classpath [%s] available after %d ms, all %d engine(s) are in use",
+							engineName, scriptClasspath, waited, size), null, waited);
+				}
+			}
+		}
+		long waited = System.nanoTime() - start;
+		PlanningMetrics.recordNanos(Phase.SCRIPT_ENGINE_WAIT, waited);
+		totalWaitNanos.addAndGet(waited);
+		updateMaxWait(waited);
+		borrowCount.incrementAndGet();
+		engine.uses++;
+		borrowed.put(engine.scriptEngine, engine);
+		logger.debug("Borrowed script engine for classpath [{}] after {} ms ({} idle, {} created)",
+				scriptClasspath, TimeUnit.NANOSECONDS.toMillis(waited), idle.size(), created.get());
+		return engine.scriptEngine;
+	}
+
+	/**
+	 * Returns a borrowed engine. A broken engine, or one that reached {@link #MAX_USES}, is replaced by a fresh one.
+	 */
+	public void release(ScriptEngine scriptEngine, boolean broken) {
+		PooledEngine engine = borrowed.remove(scriptEngine);
+		if (engine == null) {
+			if (discarded.remove(scriptEngine)) {
+				logger.debug("Discarded script engine for classpath [{}] finished its script", scriptClasspath);
+				return;
+			}
+			logger.warn("Script engine {} does not belong to the pool of classpath [{}]", scriptEngine, scriptClasspath);
+			return;
+		}
+		if (broken || engine.uses >= MAX_USES) {
+			recycleCount.incrementAndGet();
+			created.decrementAndGet();
+			logger.debug("Recycling script engine for classpath [{}] after {} use(s)", scriptClasspath, engine.uses);
+			warmUpExecutor.submit(new Runnable() {
+				@Override
+				public void run() {
+					fill();
+				}
+			});
+			return;
+		}
+		idle.offer(engine);
+	}
+
+	/**
+	 * Drops a borrowed engine that cannot be returned, for instance because it is still running a script that timed
+	 * out, and frees its slot for a fresh engine. A later {@link #release(ScriptEngine, boolean)} of the engine is ignored.
+	 */
+	public void discard(ScriptEngine scriptEngine) {
+		if (borrowed.remove(scriptEngine) == null) {
+			return;
+		}
+		discarded.add(scriptEngine);
+		recycleCount.incrementAndGet();
+		created.decrementAndGet();
+		logger.warn("Discarded script engine for classpath [{}]", scriptClasspath);
+		warmUpExecutor.submit(new Runnable() {
+			@Override
+			public void run() {
+				fill();
+			}
+		});
+	}
+
+	/**
+	 * Returns the compiled form of the script for a borrowed engine, compiling it only when the engine has not
+	 * compiled this version of the script yet. Returns null when the engine does not support compilation.
+	 */
+	public CompiledScript compile(ScriptEngine scriptEngine, ScriptSource source) throws ScriptException {
+		PooledEngine engine = borrowed.get(scriptEngine);
+		if (engine == null || !(scriptEngine instanceof Compilable)) {
+			return null;
+		}
+		CompiledEntry entry = engine.compiled.get(source.getName());
+		if (entry != null && entry.source == source) {
+			compileHits.incrementAndGet();
+			return entry.compiledScript;
+		}
+		logger.debug("Compiling script {} for classpath [{}]", source.getName(), scriptClasspath);
+		CompiledScript compiledScript = ((Compilable) scriptEngine).compile(source.getScript());
+		engine.compiled.put(source.getName(), new CompiledEntry(source, compiledScript));
+		compileMisses.incrementAndGet();
+		return compiledScript;
+	}
+
+	private boolean reserve() {
+		while (true) {
+			int current = created.get();
+			if (current >= size) {
+				return false;
+			}
+			if (created.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	private void updateMaxWait(long waited) {
+		while (true) {
+			long current = maxWaitNanos.get();
+			if (waited <= current || maxWaitNanos.compareAndSet(current, waited)) {
+				return;
+			}
+		}
+	}
+
+	private PooledEngine createEngine() {
+		long start = System.nanoTime();
+		ScriptEngine scriptEngine = new ScriptEngineManager().getEngineByName(engineName);
+		checkNotNull(scriptEngine, "%s Script Engine cannot be initialized. Make sure its jars are on the class path.", engineName);
+		List<ScriptSource> libraries = ScriptRunner.loadLibraryScripts(libraryScripts, scriptEngine);
+		long elapsed = System.nanoTime() - start;
+		PlanningMetrics.recordNanos(Phase.SCRIPT_ENGINE_STARTUP, elapsed);
+		logger.debug("Created {} script engine for classpath [{}] in {} ms", engineName, scriptClasspath, TimeUnit.NANOSECONDS.toMillis(elapsed));
+		return new PooledEngine(scriptEngine, libraries);
+	}
+
+	public String getEngineName() {
+		return engineName;
+	}
+
+	public String getScriptClasspath() {
+		return scriptClasspath;
+	}
+
+	public int getSize() {
+		return created.get();
+	}
+
+	public int getMaxSize() {
+		return size;
+	}
+
+	public int getIdleCount() {
+		return idle.size();
+	}
+
+	public long getBorrowCount() {
+		return borrowCount.get();
+	}
+
+	public long getRecycleCount() {
+		return recycleCount.get();
+	}
+
+	public long getCompileHitCount() {
+		return compileHits.get();
+	}
+
+	public long getCompileMissCount() {
+		return compileMisses.get();
+	}
+
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+	}
+
+	public long getMaxWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ScriptEnginePool[engine=%s, classpath=%s, size=%d/%d, idle=%d, borrows=%d, recycled=%d, compiled(hit/miss)=%d/%d, wait(total/max)=%d/%d ms]",
+				engineName, scriptClasspath, getSize(), size, getIdleCount(), getBorrowCount(), getRecycleCount(), getCompileHitCount(), getCompileMissCount(),
+				getTotalWaitMillis(), getMaxWaitMillis());
+	}
+
+	private static class PooledEngine {
+		private final ScriptEngine scriptEngine;
+		private final List<ScriptSource> libraries;
+		private final Map<String, CompiledEntry> compiled = new HashMap<String, CompiledEntry>();
+		private int uses;
+
+		PooledEngine(ScriptEngine scriptEngine, List<ScriptSource> libraries) {
+			this.scriptEngine = scriptEngine;
+			this.libraries = libraries;
+		}
+
+		boolean isStale() {
+			for (ScriptSource library : libraries) {
+				if (!ScriptCache.isCurrent(library)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static class CompiledEntry {
+		private final ScriptSource source;
+		private final CompiledScript compiledScript;
+
+		CompiledEntry(ScriptSource source, CompiledScript compiledScript) {
+			this.source = source;
+			this.compiledScript = compiledScript;
+		}
+	}
+
+	protected static final Logger logger = LoggerFactory.getLogger(ScriptEnginePool.class);
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.lang.String.format;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+/**
+ * Chooses the engine running a custom credential script: the explicit engine name when given, otherwise the JSR-223
+ * engine registered for the extension of the script path. Scripts without extension and <code>.py</code> scripts run
+ * on Jython. The {@link #JAVA} engine loads the script path as the class name of a {@link CredentialScript}.
+ */
+public class ScriptEngines {
+
+    public static final String JAVA = "java";
+
+    private static final ConcurrentMap<String, String> enginesByExtension = new ConcurrentHashMap<String, String>();
+
+    public static String resolve(String scriptEngine, String scriptPath) {
+        if (!isNullOrEmpty(scriptEngine) && !isNullOrEmpty(scriptEngine.trim())) {
+            return scriptEngine.trim();
+        }
+        String fileName = scriptPath.substring(scriptPath.lastIndexOf('/') + 1);
+        int dot = fileName.lastIndexOf('.');
+        if (dot < 0) {
+            return ScriptEnginePool.ENGINE_NAME;
+        }
+        String extension = fileName.substring(dot + 1).toLowerCase();
+        if (extension.equals("py")) {
+            return ScriptEnginePool.ENGINE_NAME;
+        }
+        String engineName = enginesByExtension.get(extension);
+        if (engineName == null) {
+            engineName = lookup(extension);
+            enginesByExtension.put(extension, engineName);
+        }
+        return engineName;
+    }
+
+    private static String lookup(String extension) {
+        for (ScriptEngineFactory factory : new ScriptEngineManager().getEngineFactories()) {
+            if (factory.getExtensions().contains(extension) && !factory.getNames().isEmpty()) {
+                return factory.getNames().get(0);
+            }
+        }
+        throw new DeployitException(format("No script engine found for the .%s extension, set the scriptEngine property or add the engine jars to the class path", extension));
+    }
+}
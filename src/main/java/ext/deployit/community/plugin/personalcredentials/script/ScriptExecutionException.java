@@ -20,6 +20,8 @@ public class ScriptExecutionException extends DeployitException {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	private long elapsedMillis = -1;
+
 	public ScriptExecutionException(String msg) {
         super(msg);
     }
@@ -28,5 +30,20 @@ public class ScriptExecutionException extends DeployitException {
         super(msg, cause);
     }
 
+    /**
+     * @param elapsedMillis time the script ran before it failed or was stopped
+     */
+    public ScriptExecutionException(String msg, Throwable cause, long elapsedMillis) {
+        super(msg, cause);
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * @return the time the script ran in milliseconds, or -1 when unknown
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
 }
 
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static java.lang.String.format;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+/**
+ * Bounded executor running the custom credential scripts, so a hanging script holds one of its threads instead of a
+ * planning thread. A script that exceeds its timeout is interrupted and reported with a {@link ScriptExecutionException}
+ * carrying the elapsed time. A script that ignores the interrupt, such as a Jython loop, keeps running on its thread;
+ * the executor then gets an extra thread for it, at most <code>THREADS</code> of them, until the script ends. Sized with the <code>xlc.personalcredentials.scriptExecutor.threads</code> (default 8)
+ * and <code>xlc.personalcredentials.scriptExecutor.queueSize</code> (default 100) system properties.
+ */
+public class ScriptExecutor {
+
+    public static final int THREADS = Integer.getInteger("xlc.personalcredentials.scriptExecutor.threads", 8);
+    public static final int QUEUE_SIZE = Integer.getInteger("xlc.personalcredentials.scriptExecutor.queueSize", 100);
+
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+            new ThreadFactoryBuilder().setNameFormat("personal-credentials-script-%d").setDaemon(true).build());
+
+    private static final AtomicLong timeouts = new AtomicLong();
+    private static final AtomicLong rejections = new AtomicLong();
+    private static final AtomicInteger abandoned = new AtomicInteger();
+
+    static {
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static <T> Future<T> submit(String scriptName, Callable<T> task) {
+        try {
+            ScriptTask<T> future = new ScriptTask<T>(scriptName, task);
+            executor.execute(future);
+            return future;
+        } catch (RejectedExecutionException e) {
+            rejections.incrementAndGet();
+            throw new ScriptExecutionException(format("%s not run: %d script(s) running and %d queued", scriptName, executor.getActiveCount(), executor.getQueue().size()), e);
+        }
+    }
+
+    /**
+     * Runs the task on the executor and waits for it at most <code>timeoutSeconds</code>, without limit when not positive.
+     * On timeout the task is interrupted, <code>onTimeout</code> is run and a {@link ScriptExecutionException} is thrown.
+     */
+    public static <T> T call(String scriptName, Callable<T> task, int timeoutSeconds, Runnable onTimeout) {
+        long start = System.nanoTime();
+        Future<T> future = submit(scriptName, task);
+        return await(scriptName, future, start, timeoutSeconds, onTimeout);
+    }
+
+    static <T> T await(String scriptName, Future<T> future, long start, int timeoutSeconds, Runnable onTimeout) {
+        try {
+            return timeoutSeconds > 0 ? future.get(remainingNanos(start, timeoutSeconds), TimeUnit.NANOSECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            if (future instanceof ScriptTask) {
+                ((ScriptTask<?>) future).abandon();
+            }
+            timeouts.incrementAndGet();
+            if (onTimeout != null) {
+                onTimeout.run();
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.warn("Script {} timed out after {} ms and was interrupted", scriptName, elapsed);
+            throw new ScriptExecutionException(format("%s timed out after %d ms (timeout %d s)", scriptName, elapsed, timeoutSeconds), e, elapsed);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ScriptExecutionException(scriptName + " interrupted", e, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof DeployitException) {
+                throw (DeployitException) cause;
+            }
+            throw new ScriptExecutionException(scriptName + " " + cause.getMessage(), cause, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    static long remainingNanos(long start, int timeoutSeconds) {
+        return Math.max(0, TimeUnit.SECONDS.toNanos(timeoutSeconds) - (System.nanoTime() - start));
+    }
+
+    /**
+     * Adds or removes a thread for a script that was abandoned after its timeout, or that ended after being abandoned.
+     */
+    private static synchronized void resize(int delta) {
+        int count = abandoned.addAndGet(delta);
+        int threads = THREADS + Math.min(count, THREADS);
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else if (threads < executor.getMaximumPoolSize()) {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    public static int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public static int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public static long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public static long getRejectedCount() {
+        return rejections.get();
+    }
+
+    /**
+     * @return the number of scripts that timed out but are still running
+     */
+    public static int getAbandonedCount() {
+        return abandoned.get();
+    }
+
+    /**
+     * Task that knows whether it was abandoned by its caller while it was running.
+     */
+    private static class ScriptTask<T> extends FutureTask<T> {
+        private static final int RUNNING = 0;
+        private static final int ENDED = 1;
+        private static final int ABANDONED = 2;
+
+        private final String scriptName;
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+
+        ScriptTask(String scriptName, Callable<T> callable) {
+            super(callable);
+            this.scriptName = scriptName;
+        }
+
+        @Override
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                if (!state.compareAndSet(RUNNING, ENDED)) {
+                    logger.info("Abandoned script {} ended", scriptName);
+                    resize(-1);
+                }
+            }
+        }
+
+        void abandon() {
+            if (state.compareAndSet(RUNNING, ABANDONED)) {
+                resize(1);
+            }
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ScriptExecutor.class);
+}
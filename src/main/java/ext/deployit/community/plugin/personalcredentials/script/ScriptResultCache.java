@@ -0,0 +1,118 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialCipher;
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Counter;
+
+/**
+ * Cache of the host credentials set by custom scripts, keyed by deploying user, environment id, host id and script,
+ * so changing the script path or classpath of an environment does not serve credentials of the previous script.
+ * Credentials are kept encrypted by {@link CredentialCipher}.
+ */
+public class ScriptResultCache {
+
+    public static final int MAX_ENTRIES = Integer.getInteger("xlc.personalcredentials.scriptResultCache.maxEntries", 100000);
+
+    private static final Cache<String, Entry> entries = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @return the cached credentials, or null when there are none or they expired
+     */
+    public static HostCredentials get(String username, String environmentId, String hostId, String script) {
+        String cacheKey = cacheKey(username, environmentId, hostId, script);
+        Entry entry = entries.getIfPresent(cacheKey);
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+            if (entry != null) {
+                entries.invalidate(cacheKey);
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        PlanningMetrics.increment(Counter.SCRIPT_CACHE_HITS, 1);
+        return CredentialCipher.decrypt(entry.encrypted);
+    }
+
+    public static void put(String username, String environmentId, String hostId, String script, HostCredentials credentials, int ttlSeconds) {
+        if (ttlSeconds <= 0) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+        entries.put(cacheKey(username, environmentId, hostId, script), new Entry(CredentialCipher.encrypt(credentials), expiresAt));
+    }
+
+    /**
+     * Removes the cached credentials of all users for the hosts of an environment.
+     */
+    public static void invalidateEnvironment(String environmentId) {
+        logger.info("Invalidating cached script credentials of environment {}", environmentId);
+        String marker = "\0" + environmentId + "\0";
+        for (String cacheKey : entries.asMap().keySet()) {
+            if (cacheKey.contains(marker)) {
+                entries.invalidate(cacheKey);
+            }
+        }
+    }
+
+    public static void invalidateAll() {
+        logger.info("Invalidating all cached script credentials");
+        entries.invalidateAll();
+    }
+
+    public static long size() {
+        return entries.size();
+    }
+
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the part of the cache key identifying the script run for the hosts
+     */
+    public static String scriptKey(String scriptPath, String scriptClasspath) {
+        return scriptPath + "\0" + scriptClasspath;
+    }
+
+    private static String cacheKey(String username, String environmentId, String hostId, String script) {
+        return username + "\0" + environmentId + "\0" + hostId + "\0" + script;
+    }
+
+    private static class Entry {
+        private final byte[] encrypted;
+        private final long expiresAt;
+
+        Entry(byte[] encrypted, long expiresAt) {
+            this.encrypted = encrypted;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    protected static final Logger logger = LoggerFactory.getLogger(ScriptResultCache.class);
+}
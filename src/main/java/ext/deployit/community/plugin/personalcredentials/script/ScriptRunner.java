@@ -10,20 +10,29 @@
 package ext.deployit.community.plugin.personalcredentials.script;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
 
 import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import javax.script.SimpleBindings;
 
@@ -38,83 +47,274 @@ import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
 import com.xebialabs.deployit.plugin.api.udm.Environment;
 import com.xebialabs.deployit.plugin.overthere.Host;
 
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Counter;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptCache.ScriptSource;
+
 public class ScriptRunner {
 	public final static String KEY_DEPLOYED_APPLICATION = "deployedApplication";
 	public final static String KEY_ENVIRONMENT          = "environment";
 	public final static String KEY_HOSTS                = "hosts";
 	public final static String KEY_LOGGER               = "logger";
+	public final static String KEY_HOST_INDEX           = "hostIndex";
+
+	public final static String PER_HOST_FUNCTION       = "getHostCredentials";
 	
 	public final static String SCRIPT_PATH             = "/ext";
 
 	public static void executeScript(DeployedApplication deployedApplication, Environment environment, Set<Host> hosts,  String scriptName, String scriptClasspath){
+		executeScript(deployedApplication, environment, hosts, scriptName, scriptClasspath, ScriptEnginePool.ENGINE_NAME);
+	}
+
+	public static void executeScript(DeployedApplication deployedApplication, Environment environment, Set<Host> hosts,  String scriptName, String scriptClasspath, String engineName){
+		executeScript(deployedApplication, environment, hosts, scriptName, scriptClasspath, engineName, 0);
+	}
+
+	/**
+	 * Runs the script on the given JSR-223 engine, or the {@link CredentialScript} class named by <code>scriptName</code>
+	 * when the engine is {@link ScriptEngines#JAVA}. The script runs on the {@link ScriptExecutor}; when it does not
+	 * complete within <code>timeoutSeconds</code> (no limit when not positive) it is interrupted and its engine discarded.
+	 * The engine is also discarded when the script fails, only an engine that completed its script goes back to the pool.
+	 */
+	public static void executeScript(DeployedApplication deployedApplication, Environment environment, Set<Host> hosts,  String scriptName, String scriptClasspath, String engineName, int timeoutSeconds){
+		if (ScriptEngines.JAVA.equals(engineName)) {
+			executeCredentialScript(deployedApplication, environment, hosts, scriptName, timeoutSeconds);
+			return;
+		}
 		Map<String, Object> pythonContext = new HashMap<String, Object>();
 		pythonContext.put(KEY_DEPLOYED_APPLICATION, deployedApplication);
 		pythonContext.put(KEY_ENVIRONMENT, environment);
 		pythonContext.put(KEY_HOSTS, hosts);
+		pythonContext.put(KEY_HOST_INDEX, new HostIndex(hosts));
 		pythonContext.put(KEY_LOGGER, logger);
-		ScriptEngine se;
+		final ScriptEnginePool pool = ScriptEnginePool.forEngine(engineName, scriptClasspath);
+		final ScriptSource source = ScriptCache.get(scriptName);
+		final Bindings bindings = createBindings(pythonContext);
+		final Set<ScriptEngine> inUse = Collections.newSetFromMap(new ConcurrentHashMap<ScriptEngine, Boolean>());
 		try {
-			se = loadScriptEngine(getLibraryScripts(scriptClasspath));
-			Bindings bindings = createBindings(pythonContext);
-			loadLibraryScriptsAndEval(scriptName, se, bindings, scriptClasspath);
-		} catch (IOException e) {
-			throw new DeployitException(e);
-		}	
+			ScriptExecutor.call(scriptName, new Callable<Void>() {
+				@Override
+				public Void call() {
+					ScriptEngine se = pool.borrow();
+					inUse.add(se);
+					boolean broken = true;
+					try {
+						evalWithBindings(source, pool, se, bindings);
+						// a script that failed or was interrupted may have left state in the engine, it is not reused
+						broken = false;
+					} finally {
+						inUse.remove(se);
+						pool.release(se, broken);
+					}
+					return null;
+				}
+			}, timeoutSeconds, discardEngines(pool, inUse));
+		} catch (RuntimeException e) {
+			PlanningMetrics.increment(Counter.SCRIPT_FAILURES, 1);
+			throw e;
+		}
 	}
 
-	protected static void loadLibraryScriptsAndEval(String scriptName, ScriptEngine scriptEngine, Bindings localBindings, String scriptClasspath){
-		Bindings origEngineBindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
-		String script = "";
+	static void executeCredentialScript(final DeployedApplication deployedApplication, final Environment environment, final Set<Host> hosts, final String className, int timeoutSeconds) {
+		final CredentialScript script = CredentialScripts.get(className);
+		long start = PlanningMetrics.start();
 		try {
-			script = loadScript(scriptName);
-			Bindings engineAndLocalScope = new SimpleBindings();
-			engineAndLocalScope.putAll(origEngineBindings);
-			engineAndLocalScope.putAll(localBindings);
-			scriptEngine.setBindings(engineAndLocalScope, ScriptContext.ENGINE_SCOPE);
-			loadLibraryScripts(getLibraryScripts(scriptClasspath), scriptEngine);
-			logger.debug("Executing script " + scriptName);
-			if (logger.isTraceEnabled()) {
-				logger.trace(script);
+			ScriptExecutor.call(className, new Callable<Void>() {
+				@Override
+				public Void call() {
+					script.execute(deployedApplication, environment, hosts, logger);
+					return null;
+				}
+			}, timeoutSeconds, null);
+		} catch (RuntimeException e) {
+			PlanningMetrics.increment(Counter.SCRIPT_FAILURES, 1);
+			throw e;
+		}
+		PlanningMetrics.record(Phase.SCRIPT_EVALUATION, start);
+	}
+
+	/**
+	 * Discards the engines still running a script that timed out, they cannot be returned to their pool.
+	 */
+	private static Runnable discardEngines(final ScriptEnginePool pool, final Set<ScriptEngine> inUse) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				for (ScriptEngine scriptEngine : inUse) {
+					pool.discard(scriptEngine);
+				}
 			}
-			scriptEngine.eval(script);
-		} catch (IOException e){
-			logger.error("IOException caught during script load : {}", scriptName, e);
+		};
+	}
+
+	/**
+	 * Evaluates the script against a fresh copy of the engine bindings (the evaluated library scripts) merged with
+	 * the call bindings; the engine bindings are restored afterwards, so nothing leaks from one call to the next.
+	 */
+	protected static void evalWithBindings(ScriptSource source, ScriptEnginePool pool, ScriptEngine scriptEngine, Bindings localBindings){
+		Bindings origEngineBindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+		try {
+			scriptEngine.setBindings(mergeBindings(origEngineBindings, localBindings), ScriptContext.ENGINE_SCOPE);
+			eval(source, pool, scriptEngine);
 		} catch (ScriptException e) {
-			Throwable cause = e.getCause();
-			if (cause instanceof DeployitException){
-				throw (DeployitException)cause;
-			}
-			throw new ScriptExecutionException(scriptName+" "+ e.getMessage(), e);
+			throw toExecutionException(source.getName(), e);
 		} finally {
 			scriptEngine.setBindings(origEngineBindings, ScriptContext.ENGINE_SCOPE);
 		}
 	}
 
+	/**
+	 * Runs the per-host function {@link #PER_HOST_FUNCTION} of the script for every host, on at most
+	 * <code>concurrency</code> workers. Each worker borrows its own engine and evaluates the script once before calling
+	 * the function for the hosts it takes from a shared queue. The function returns a dict with the 'username',
+	 * 'password', 'privateKeyFile' and 'passphrase' to set on the host, or None to leave the host unchanged.
+	 * The hosts are not modified, the returned map holds the credentials to apply.
+	 */
+	public static Map<Host, HostCredentials> executeScriptPerHost(DeployedApplication deployedApplication, Environment environment, Set<Host> hosts, String scriptName, String scriptClasspath, int concurrency){
+		return executeScriptPerHost(deployedApplication, environment, hosts, scriptName, scriptClasspath, concurrency, ScriptEnginePool.ENGINE_NAME, 0);
+	}
+
+	/**
+	 * Same as {@link #executeScriptPerHost(DeployedApplication, Environment, Set, String, String, int)} on the given engine.
+	 * The workers run on the {@link ScriptExecutor}; when they do not complete within <code>timeoutSeconds</code> (no
+	 * limit when not positive) they are interrupted and their engines discarded.
+	 */
+	public static Map<Host, HostCredentials> executeScriptPerHost(DeployedApplication deployedApplication, Environment environment, Set<Host> hosts, String scriptName, String scriptClasspath, int concurrency, String engineName, int timeoutSeconds){
+		Map<String, Object> pythonContext = new HashMap<String, Object>();
+		pythonContext.put(KEY_DEPLOYED_APPLICATION, deployedApplication);
+		pythonContext.put(KEY_ENVIRONMENT, environment);
+		pythonContext.put(KEY_HOSTS, hosts);
+		pythonContext.put(KEY_HOST_INDEX, new HostIndex(hosts));
+		pythonContext.put(KEY_LOGGER, logger);
+		ScriptEnginePool pool = ScriptEnginePool.forEngine(engineName, scriptClasspath);
+		ScriptSource source = ScriptCache.get(scriptName);
+		int workers = Math.max(1, Math.min(Math.min(concurrency, pool.getMaxSize()), hosts.size()));
+		logger.debug("Executing {} of script {} for {} host(s) on {} worker(s)", PER_HOST_FUNCTION, scriptName, hosts.size(), workers);
+
+		Queue<Host> queue = new ConcurrentLinkedQueue<Host>(hosts);
+		ConcurrentMap<Host, HostCredentials> results = new ConcurrentHashMap<Host, HostCredentials>();
+		Set<ScriptEngine> inUse = Collections.newSetFromMap(new ConcurrentHashMap<ScriptEngine, Boolean>());
+		long start = System.nanoTime();
+		List<Future<Void>> futures = Lists.newArrayList();
+		try {
+			for (int i = 0; i < workers; i++) {
+				futures.add(ScriptExecutor.submit(scriptName, new PerHostWorker(source, pool, createBindings(pythonContext), queue, results, inUse)));
+			}
+			for (Future<Void> future : futures) {
+				ScriptExecutor.await(scriptName, future, start, timeoutSeconds, discardEngines(pool, inUse));
+			}
+		} catch (RuntimeException e) {
+			queue.clear();
+			for (Future<Void> future : futures) {
+				future.cancel(true);
+			}
+			PlanningMetrics.increment(Counter.SCRIPT_FAILURES, 1);
+			throw e;
+		}
+		return results;
+	}
+
+	private static class PerHostWorker implements Callable<Void> {
+		private final ScriptSource source;
+		private final ScriptEnginePool pool;
+		private final Bindings localBindings;
+		private final Queue<Host> queue;
+		private final ConcurrentMap<Host, HostCredentials> results;
+		private final Set<ScriptEngine> inUse;
+
+		PerHostWorker(ScriptSource source, ScriptEnginePool pool, Bindings localBindings, Queue<Host> queue, ConcurrentMap<Host, HostCredentials> results, Set<ScriptEngine> inUse) {
+			this.source = source;
+			this.pool = pool;
+			this.localBindings = localBindings;
+			this.queue = queue;
+			this.results = results;
+			this.inUse = inUse;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			ScriptEngine scriptEngine = pool.borrow();
+			inUse.add(scriptEngine);
+			boolean broken = true;
+			Bindings origEngineBindings = scriptEngine.getBindings(ScriptContext.ENGINE_SCOPE);
+			Host host = null;
+			try {
+				scriptEngine.setBindings(mergeBindings(origEngineBindings, localBindings), ScriptContext.ENGINE_SCOPE);
+				eval(source, pool, scriptEngine);
+				Invocable invocable = (Invocable) scriptEngine;
+				while ((host = queue.poll()) != null) {
+					Object result = invocable.invokeFunction(PER_HOST_FUNCTION, host);
+					if (result instanceof Map) {
+						results.put(host, HostCredentials.fromMap((Map<?, ?>) result));
+					} else if (result != null) {
+						throw new ScriptExecutionException(format("%s %s returned a %s for host %s, expected a dict", source.getName(), PER_HOST_FUNCTION, result.getClass().getName(), host.getId()));
+					}
+				}
+				broken = false;
+			} catch (ScriptException e) {
+				throw toExecutionException(source.getName() + (host != null ? " (host " + host.getId() + ")" : ""), e);
+			} catch (NoSuchMethodException e) {
+				throw new ScriptExecutionException(format("%s does not define the function %s(host)", source.getName(), PER_HOST_FUNCTION), e);
+			} finally {
+				scriptEngine.setBindings(origEngineBindings, ScriptContext.ENGINE_SCOPE);
+				inUse.remove(scriptEngine);
+				pool.release(scriptEngine, broken);
+			}
+			return null;
+		}
+	}
+
+	static Bindings mergeBindings(Bindings engineBindings, Bindings localBindings) {
+		Bindings engineAndLocalScope = new SimpleBindings();
+		engineAndLocalScope.putAll(engineBindings);
+		engineAndLocalScope.putAll(localBindings);
+		return engineAndLocalScope;
+	}
+
+	static void eval(ScriptSource source, ScriptEnginePool pool, ScriptEngine scriptEngine) throws ScriptException {
+		long start = PlanningMetrics.start();
+		CompiledScript compiledScript = pool.compile(scriptEngine, source);
+		logger.debug("Executing script " + source.getName());
+		if (logger.isTraceEnabled()) {
+			logger.trace(source.getScript());
+		}
+		if (compiledScript != null) {
+			compiledScript.eval(scriptEngine.getContext());
+		} else {
+			scriptEngine.eval(source.getScript());
+		}
+		PlanningMetrics.record(Phase.SCRIPT_EVALUATION, start);
+	}
+
+	static DeployitException toExecutionException(String scriptName, ScriptException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof DeployitException){
+			return (DeployitException)cause;
+		}
+		return new ScriptExecutionException(scriptName+" "+ e.getMessage(), e);
+	}
+
 	protected static Bindings createBindings(Map<String, Object> variables) {
 		Bindings bindings = new SimpleBindings();
 		bindings.putAll(variables);
 		return bindings;
 	}
 
-	protected static ScriptEngine loadScriptEngine(List<String> libraryScripts) throws IOException {
-		ScriptEngine scriptEngine = new ScriptEngineManager().getEngineByName("jython");
-		checkNotNull(scriptEngine, "Jython Script Engine cannot be initialized. Make sure jython jars are on the class path.");
-		loadLibraryScripts(libraryScripts, scriptEngine);
-		return scriptEngine;
-	}
-
-	protected static void loadLibraryScripts(List<String> libs, ScriptEngine scriptEngine) throws IOException {
-		if (!libs.isEmpty()) {
-			for (String library : libs) {
-				String script = loadScript(library);
-				checkNotNull(script, "Library {} cannot be found on class path.", library);
-				try {
-					scriptEngine.eval(script);
-				} catch (ScriptException e) {
-					throw new RuntimeException(e);
-				}
+	protected static List<ScriptSource> loadLibraryScripts(List<String> libs, ScriptEngine scriptEngine) {
+		List<ScriptSource> sources = Lists.newArrayList();
+		for (String library : libs) {
+			ScriptSource source = ScriptCache.get(library);
+			checkNotNull(source.getScript(), "Library %s cannot be found on class path.", library);
+			try {
+				scriptEngine.eval(source.getScript());
+			} catch (ScriptException e) {
+				throw new RuntimeException(e);
 			}
+			sources.add(source);
 		}
+		return sources;
 	}
 	
 	protected static String loadScript(String scriptName){
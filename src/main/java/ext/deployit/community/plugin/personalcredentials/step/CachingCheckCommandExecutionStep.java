@@ -0,0 +1,91 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.lang.String.format;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.deployit.plugin.overthere.step.CheckCommandExecutionStep;
+
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+
+/**
+ * A CheckCommandExecutionStep that records a successful check in the {@link ConnectionCheckCache}, for the checked
+ * host and for the hosts sharing its {@link ConnectionEndpoint}.
+ */
+@SuppressWarnings("serial")
+public class CachingCheckCommandExecutionStep implements Step {
+
+    private final Host host;
+    private final List<Host> sameEndpoint;
+    private final int ttlSeconds;
+    private final CheckCommandExecutionStep delegate;
+
+    public CachingCheckCommandExecutionStep(Host host, int ttlSeconds) {
+        this(host, Collections.<Host>emptyList(), ttlSeconds);
+    }
+
+    /**
+     * @param sameEndpoint other hosts with the same endpoint, the result of the check applies to them as well
+     * @param ttlSeconds when positive, successful checks are recorded in the {@link ConnectionCheckCache} for this many seconds
+     */
+    public CachingCheckCommandExecutionStep(Host host, List<Host> sameEndpoint, int ttlSeconds) {
+        this.host = host;
+        this.sameEndpoint = newArrayList(sameEndpoint);
+        this.ttlSeconds = ttlSeconds;
+        this.delegate = new CheckCommandExecutionStep(host);
+    }
+
+    @Override
+    public int getOrder() {
+        return delegate.getOrder();
+    }
+
+    @Override
+    public String getDescription() {
+        if (sameEndpoint.isEmpty()) {
+            return delegate.getDescription();
+        }
+        return format("%s (same endpoint as %d other host(s))", delegate.getDescription(), sameEndpoint.size());
+    }
+
+    @Override
+    public StepExitCode execute(ExecutionContext ctx) throws Exception {
+        long metricsStart = PlanningMetrics.start();
+        StepExitCode exitCode = delegate.execute(ctx);
+        PlanningMetrics.record(Phase.CONNECTION_CHECK, metricsStart);
+        for (Host sameEndpointHost : sameEndpoint) {
+            ctx.logOutput(format("Connection check of %s applies to %s: %s", host.getId(), sameEndpointHost.getId(), exitCode));
+        }
+        if (ttlSeconds > 0) {
+            record(host, exitCode);
+            for (Host sameEndpointHost : sameEndpoint) {
+                record(sameEndpointHost, exitCode);
+            }
+        }
+        return exitCode;
+    }
+
+    private void record(Host checkedHost, StepExitCode exitCode) {
+        if (exitCode == StepExitCode.SUCCESS) {
+            ConnectionCheckCache.recordSuccess(checkedHost, ttlSeconds);
+        } else {
+            ConnectionCheckCache.invalidate(checkedHost);
+        }
+    }
+}
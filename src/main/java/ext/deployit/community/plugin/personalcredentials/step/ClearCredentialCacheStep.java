@@ -0,0 +1,53 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+
+import ext.deployit.community.plugin.personalcredentials.contributor.IdentityContributor;
+import ext.deployit.community.plugin.personalcredentials.script.ScriptResultCache;
+
+/**
+ * Removes the cached script credentials of an environment, or of all environments when no environment is given,
+ * and the credentials memoized for re-plans.
+ */
+@SuppressWarnings("serial")
+public class ClearCredentialCacheStep implements Step {
+
+    private final String environmentId;
+
+    public ClearCredentialCacheStep(String environmentId) {
+        this.environmentId = environmentId;
+    }
+
+    @Override
+    public int getOrder() {
+        return 1;
+    }
+
+    @Override
+    public String getDescription() {
+        return environmentId == null ? "Clear all cached personal credentials" : "Clear cached personal credentials of " + environmentId;
+    }
+
+    @Override
+    public StepExitCode execute(ExecutionContext ctx) throws Exception {
+        IdentityContributor.clearInjectionMemo();
+        if (environmentId == null) {
+            ScriptResultCache.invalidateAll();
+        } else {
+            ScriptResultCache.invalidateEnvironment(environmentId);
+        }
+        ctx.logOutput(getDescription() + ": done, " + ScriptResultCache.size() + " cached host credential(s) left");
+        return StepExitCode.SUCCESS;
+    }
+}
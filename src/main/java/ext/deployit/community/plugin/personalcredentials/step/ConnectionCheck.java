@@ -0,0 +1,109 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.xebialabs.overthere.util.CapturingOverthereExecutionOutputHandler.capturingHandler;
+
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.overthere.CmdLine;
+import com.xebialabs.overthere.OverthereConnection;
+import com.xebialabs.overthere.util.CapturingOverthereExecutionOutputHandler;
+
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+
+/**
+ * Checks that a connection can be opened to a host with its current credentials by executing a trivial command.
+ */
+public class ConnectionCheck {
+
+    static final String CHECK_MESSAGE = "personal-credentials";
+
+    public static Result check(Host host) {
+        long metricsStart = PlanningMetrics.start();
+        long start = System.currentTimeMillis();
+        OverthereConnection connection = null;
+        try {
+            connection = host.getConnection();
+            CapturingOverthereExecutionOutputHandler stdout = capturingHandler();
+            CapturingOverthereExecutionOutputHandler stderr = capturingHandler();
+            int exitCode = connection.execute(stdout, stderr, CmdLine.build("echo", CHECK_MESSAGE));
+            if (exitCode != 0) {
+                return Result.failed(host, System.currentTimeMillis() - start, "exit code " + exitCode + " " + nullToEmpty(stderr.getOutput()).trim());
+            }
+            return Result.passed(host, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            return Result.failed(host, System.currentTimeMillis() - start, e.getMessage());
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            PlanningMetrics.record(Phase.CONNECTION_CHECK, metricsStart);
+        }
+    }
+
+    public enum Status {
+        PASSED, FAILED, TIMEOUT
+    }
+
+    public static class Result {
+        private final String hostId;
+        private final Status status;
+        private final long durationMillis;
+        private final String message;
+
+        Result(String hostId, Status status, long durationMillis, String message) {
+            this.hostId = hostId;
+            this.status = status;
+            this.durationMillis = durationMillis;
+            this.message = message;
+        }
+
+        static Result passed(Host host, long durationMillis) {
+            return new Result(host.getId(), Status.PASSED, durationMillis, "");
+        }
+
+        static Result failed(Host host, long durationMillis, String message) {
+            return new Result(host.getId(), Status.FAILED, durationMillis, nullToEmpty(message));
+        }
+
+        /**
+         * The result of the check of another host with the same endpoint.
+         */
+        static Result sameAs(Host host, Result result) {
+            return new Result(host.getId(), result.status, 0, "same endpoint as " + result.hostId);
+        }
+
+        static Result timeout(Host host, long durationMillis) {
+            return new Result(host.getId(), Status.TIMEOUT, durationMillis, "no answer within " + durationMillis + " ms");
+        }
+
+        public String getHostId() {
+            return hostId;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isPassed() {
+            return status == Status.PASSED;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
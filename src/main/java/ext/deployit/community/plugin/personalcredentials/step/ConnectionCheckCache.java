@@ -0,0 +1,109 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Counter;
+
+/**
+ * Remembers successful connection checks per host for a limited time. An entry only matches while the host id,
+ * address and credentials of the host are the ones that were checked, so any credential change invalidates it.
+ * The cache is bounded: least recently used entries are evicted beyond {@link #MAX_ENTRIES}, and no entry outlives
+ * {@link #MAX_TTL_SECONDS}, whatever the TTL of the deployed application.
+ */
+public class ConnectionCheckCache {
+
+    public static final int MAX_ENTRIES = Integer.getInteger("xlc.personalcredentials.connectionCheckCache.maxEntries", 100000);
+    public static final int MAX_TTL_SECONDS = Integer.getInteger("xlc.personalcredentials.connectionCheckCache.maxTtl", 86400);
+
+    private static final Cache<String, Entry> entries = CacheBuilder.newBuilder()
+            .maximumSize(MAX_ENTRIES)
+            .expireAfterWrite(MAX_TTL_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns true when the connection to the host was checked successfully with its current credentials less than the TTL ago.
+     */
+    public static boolean isFresh(Host host) {
+        Entry entry = entries.getIfPresent(host.getId());
+        if (entry == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        if (!entry.fingerprint.equals(HostCredentials.fingerprint(host))) {
+            logger.debug("Credentials of host {} changed, connection check cache entry invalidated", host.getId());
+            entries.asMap().remove(host.getId(), entry);
+            misses.incrementAndGet();
+            return false;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            entries.asMap().remove(host.getId(), entry);
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        PlanningMetrics.increment(Counter.CONNECTION_CHECK_CACHE_HITS, 1);
+        return true;
+    }
+
+    public static void recordSuccess(Host host, int ttlSeconds) {
+        if (ttlSeconds <= 0) {
+            return;
+        }
+        long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.min(ttlSeconds, MAX_TTL_SECONDS));
+        entries.put(host.getId(), new Entry(HostCredentials.fingerprint(host), expiresAt));
+    }
+
+    public static void invalidate(Host host) {
+        entries.invalidate(host.getId());
+    }
+
+    public static void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public static long size() {
+        return entries.size();
+    }
+
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    private static class Entry {
+        private final String fingerprint;
+        private final long expiresAt;
+
+        Entry(String fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionCheckCache.class);
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.xebialabs.deployit.plugin.api.reflect.Descriptor;
+import com.xebialabs.deployit.plugin.api.reflect.PropertyDescriptor;
+import com.xebialabs.deployit.plugin.api.udm.ConfigurationItem;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.credentials.CredentialCipher;
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+
+/**
+ * The way a host is connected to: its type and all its connection options, such as the connection type, address,
+ * port, jumpstation, CIFS and WinRM options and sudo or su user, plus its effective credentials. Host CIs with the
+ * same endpoint reach the same machine the same way, so checking one of them checks them all.
+ * <p>
+ * The options are all the properties of the host type except {@link #IGNORED_PROPERTIES}; password properties are
+ * only part of the key as a keyed hash. Without a type descriptor, the {@link #CONNECTION_PROPERTIES} are used.
+ */
+public class ConnectionEndpoint {
+
+    static final Set<String> IGNORED_PROPERTIES = ImmutableSet.of("tags", "deploymentGroup", "deploymentSubGroup", "deploymentSubSubGroup");
+
+    static final List<String> CONNECTION_PROPERTIES = ImmutableList.of("os", "connectionType", "address", "port",
+            "username", "password", "privateKeyFile", "passphrase", "jumpstation", "sudoUsername", "suUsername", "suPassword",
+            "sudoCommandPrefix", "suCommandPrefix", "allocateDefaultPty", "allocatePty", "interactiveKeyboardAuthRegex",
+            "cifsPort", "cifsUrlEncoding", "pathShareMappings", "winrmEnableHttps", "winrmContext", "winrmKerberosUseHttpSpn",
+            "winrmKerberosAddPortToSpn", "winrsAllowDelegate", "winrsProxyProtocol", "localHostAddress", "localPort",
+            "temporaryDirectoryPath", "connectionTimeoutMillis", "socketTimeoutMillis");
+
+    static final Set<String> PASSWORD_PROPERTIES = ImmutableSet.of("password", "passphrase", "suPassword");
+
+    public static String of(Host host) {
+        StringBuilder key = new StringBuilder().append(host.getType());
+        Descriptor descriptor = host.getType() == null ? null : host.getType().getDescriptor();
+        if (descriptor != null) {
+            for (PropertyDescriptor property : descriptor.getPropertyDescriptors()) {
+                if (!IGNORED_PROPERTIES.contains(property.getName())) {
+                    append(key, property.getName(), property.get(host), property.isPassword());
+                }
+            }
+        } else {
+            for (String property : CONNECTION_PROPERTIES) {
+                if (host.hasProperty(property)) {
+                    append(key, property, host.getProperty(property), PASSWORD_PROPERTIES.contains(property));
+                }
+            }
+        }
+        Object address = host.hasProperty(HostCredentials.ADDRESS) ? host.getProperty(HostCredentials.ADDRESS) : null;
+        key.append('\0').append(HostCredentials.of(host).fingerprint("", address));
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, String name, Object value, boolean password) {
+        if (value == null) {
+            return;
+        }
+        key.append('\0').append(name).append('=');
+        if (password) {
+            key.append(CredentialCipher.mac(value.toString()));
+        } else {
+            key.append(toKey(value));
+        }
+    }
+
+    private static Object toKey(Object value) {
+        if (value instanceof ConfigurationItem) {
+            return ((ConfigurationItem) value).getId();
+        } else if (value instanceof Collection) {
+            List<Object> keys = Lists.newArrayList();
+            for (Object element : (Collection<?>) value) {
+                keys.add(toKey(element));
+            }
+            return keys;
+        } else if (value instanceof Map) {
+            return new TreeMap<Object, Object>((Map<?, ?>) value);
+        }
+        return value;
+    }
+
+    /**
+     * Groups the hosts by endpoint, keeping the order of the hosts; the first host of a group stands for the group.
+     */
+    public static Collection<List<Host>> group(Collection<Host> hosts) {
+        Map<String, List<Host>> groups = new LinkedHashMap<String, List<Host>>();
+        for (Host host : hosts) {
+            String endpoint = of(host);
+            List<Host> group = groups.get(endpoint);
+            if (group == null) {
+                group = Lists.newArrayList();
+                groups.put(endpoint, group);
+            }
+            group.add(host);
+        }
+        return groups.values();
+    }
+}
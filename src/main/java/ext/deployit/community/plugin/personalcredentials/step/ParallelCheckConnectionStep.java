@@ -0,0 +1,194 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.lang.String.format;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.TimeLimiter;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.step.ConnectionCheck.Result;
+
+/**
+ * Checks the connection to all hosts of a plan concurrently, with a limit on the number of simultaneous checks and
+ * a timeout per host, and reports the outcome as a single table. Hosts with the same {@link ConnectionEndpoint}
+ * are checked once and share the result.
+ */
+@SuppressWarnings("serial")
+public class ParallelCheckConnectionStep implements Step {
+
+    public static final int DEFAULT_CONCURRENCY = 10;
+    public static final int DEFAULT_TIMEOUT_SECONDS = 60;
+
+    private final List<Host> hosts;
+    private final int concurrency;
+    private final int timeoutSeconds;
+    private final int cacheTtlSeconds;
+
+    public ParallelCheckConnectionStep(Collection<Host> hosts, int concurrency, int timeoutSeconds) {
+        this(hosts, concurrency, timeoutSeconds, 0);
+    }
+
+    /**
+     * @param cacheTtlSeconds when positive, successful checks are recorded in the {@link ConnectionCheckCache} for this many seconds
+     */
+    public ParallelCheckConnectionStep(Collection<Host> hosts, int concurrency, int timeoutSeconds, int cacheTtlSeconds) {
+        this.hosts = newArrayList(hosts);
+        this.concurrency = concurrency;
+        this.timeoutSeconds = timeoutSeconds;
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    @Override
+    public int getOrder() {
+        return 1;
+    }
+
+    @Override
+    public String getDescription() {
+        return format("Check connection to %d host(s)", hosts.size());
+    }
+
+    @Override
+    public StepExitCode execute(ExecutionContext ctx) throws Exception {
+        ctx.logOutput(format("Checking %d host(s), %d at a time, timeout %d s per host", hosts.size(), concurrency, timeoutSeconds));
+        List<Result> results = checkAll();
+        int failed = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i).isPassed()) {
+                ConnectionCheckCache.recordSuccess(hosts.get(i), cacheTtlSeconds);
+            } else {
+                ConnectionCheckCache.invalidate(hosts.get(i));
+                failed++;
+            }
+        }
+        ctx.logOutput(formatTable(results));
+        if (failed > 0) {
+            ctx.logError(format("Connection check failed for %d of %d host(s)", failed, results.size()));
+            return StepExitCode.FAIL;
+        }
+        ctx.logOutput(format("Connection check passed for %d host(s)", results.size()));
+        return StepExitCode.SUCCESS;
+    }
+
+    List<Result> checkAll() throws InterruptedException {
+        List<Host> endpoints = newArrayList();
+        Map<Host, Host> sameEndpointAs = new IdentityHashMap<Host, Host>();
+        for (List<Host> group : ConnectionEndpoint.group(hosts)) {
+            endpoints.add(group.get(0));
+            for (Host host : group) {
+                sameEndpointAs.put(host, group.get(0));
+            }
+        }
+        if (endpoints.size() < hosts.size()) {
+            logger.debug("Checking {} endpoint(s) for {} host(s)", endpoints.size(), hosts.size());
+        }
+        Map<Host, Result> endpointResults = new IdentityHashMap<Host, Result>();
+        List<Result> checked = checkAll(endpoints);
+        for (int i = 0; i < endpoints.size(); i++) {
+            endpointResults.put(endpoints.get(i), checked.get(i));
+        }
+        List<Result> results = newArrayList();
+        for (Host host : hosts) {
+            Host checkedHost = sameEndpointAs.get(host);
+            Result result = endpointResults.get(checkedHost);
+            results.add(checkedHost == host ? result : Result.sameAs(host, result));
+        }
+        return results;
+    }
+
+    private List<Result> checkAll(List<Host> hosts) throws InterruptedException {
+        int threads = Math.max(1, Math.min(concurrency, hosts.size()));
+        ExecutorService workers = Executors.newFixedThreadPool(threads, threadFactory("personal-credentials-check-%d"));
+        // bounded like the workers: a connection attempt that ignores the interrupt keeps its thread until it returns,
+        // so hung attempts hold at most one thread per worker and later checks wait for a thread and time out
+        ExecutorService connections = Executors.newFixedThreadPool(threads, threadFactory("personal-credentials-connection-%d"));
+        final TimeLimiter timeLimiter = new SimpleTimeLimiter(connections);
+        try {
+            List<Future<Result>> futures = newArrayList();
+            for (final Host host : hosts) {
+                futures.add(workers.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws Exception {
+                        return checkWithTimeout(timeLimiter, host);
+                    }
+                }));
+            }
+            List<Result> results = newArrayList();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(Result.failed(hosts.get(i), 0, e.getCause().getMessage()));
+                }
+            }
+            return results;
+        } finally {
+            workers.shutdownNow();
+            connections.shutdownNow();
+        }
+    }
+
+    private Result checkWithTimeout(TimeLimiter timeLimiter, final Host host) throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            return timeLimiter.callWithTimeout(new Callable<Result>() {
+                @Override
+                public Result call() throws Exception {
+                    return ConnectionCheck.check(host);
+                }
+            }, timeoutSeconds, TimeUnit.SECONDS, true);
+        } catch (UncheckedTimeoutException e) {
+            logger.warn("Connection check of host {} timed out after {} s", host.getId(), timeoutSeconds);
+            return Result.timeout(host, System.currentTimeMillis() - start);
+        }
+    }
+
+    static String formatTable(List<Result> results) {
+        int width = "Host".length();
+        for (Result result : results) {
+            width = Math.max(width, result.getHostId().length());
+        }
+        String rowFormat = "%-" + width + "s  %-7s  %9s  %s%n";
+        StringBuilder table = new StringBuilder(format(rowFormat, "Host", "Result", "Time (ms)", "Message"));
+        for (Result result : results) {
+            table.append(format(rowFormat, result.getHostId(), result.getStatus(), result.getDurationMillis(), result.getMessage()));
+        }
+        return table.toString();
+    }
+
+    private static ThreadFactory threadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelCheckConnectionStep.class);
+}
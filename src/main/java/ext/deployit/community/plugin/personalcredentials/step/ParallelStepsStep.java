@@ -0,0 +1,105 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.lang.String.format;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+
+/**
+ * Executes independent steps concurrently, at most <code>concurrency</code> at a time. Each step gets its own view of
+ * the execution context, which serializes the calls to the shared context and prefixes the log lines with the step
+ * description. Fails when one of the steps does not succeed, after all steps have run.
+ */
+@SuppressWarnings("serial")
+public class ParallelStepsStep implements Step {
+
+    public static final int DEFAULT_CONCURRENCY = 10;
+
+    private final String description;
+    private final List<Step> steps;
+    private final int concurrency;
+
+    public ParallelStepsStep(String description, Collection<? extends Step> steps, int concurrency) {
+        this.description = description;
+        this.steps = newArrayList(steps);
+        this.concurrency = concurrency;
+    }
+
+    @Override
+    public int getOrder() {
+        return steps.isEmpty() ? 1 : steps.get(0).getOrder();
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public StepExitCode execute(final ExecutionContext sharedCtx) throws Exception {
+        final ExecutionContext ctx = SerializedExecutionContext.wrap(sharedCtx, null);
+        ctx.logOutput(format("Executing %d step(s), %d at a time", steps.size(), concurrency));
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, steps.size())),
+                new ThreadFactoryBuilder().setNameFormat("personal-credentials-step-%d").setDaemon(true).build());
+        try {
+            List<Future<StepExitCode>> futures = newArrayList();
+            for (final Step step : steps) {
+                final ExecutionContext stepCtx = SerializedExecutionContext.wrap(sharedCtx, step.getDescription());
+                futures.add(workers.submit(new Callable<StepExitCode>() {
+                    @Override
+                    public StepExitCode call() throws Exception {
+                        return step.execute(stepCtx);
+                    }
+                }));
+            }
+            int failed = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                StepExitCode exitCode;
+                try {
+                    exitCode = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    logger.warn("Step [{}] failed", steps.get(i).getDescription(), e.getCause());
+                    ctx.logError(format("%s failed: %s", steps.get(i).getDescription(), e.getCause().getMessage()), e.getCause());
+                    exitCode = StepExitCode.FAIL;
+                }
+                if (exitCode != StepExitCode.SUCCESS) {
+                    ctx.logError(format("%s: %s", steps.get(i).getDescription(), exitCode));
+                    failed++;
+                }
+            }
+            if (failed > 0) {
+                ctx.logError(format("%d of %d step(s) did not succeed", failed, steps.size()));
+                return StepExitCode.FAIL;
+            }
+            ctx.logOutput(format("%d step(s) succeeded", steps.size()));
+            return StepExitCode.SUCCESS;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelStepsStep.class);
+}
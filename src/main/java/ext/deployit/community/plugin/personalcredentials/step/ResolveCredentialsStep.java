@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static com.google.common.collect.Sets.newLinkedHashSet;
+import static java.lang.String.format;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.contributor.IdentityContributor;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+
+/**
+ * Resolves the credentials of the hosts of a deployment when the plan executes instead of when it is planned, then
+ * runs the connection checks of the hosts. Runs before the other steps, so no secret is fetched for a plan that is
+ * never executed. The credentials are resolved for the user who planned the deployment, captured at planning: the
+ * step runs on a task thread without security context.
+ */
+@SuppressWarnings("serial")
+public class ResolveCredentialsStep implements Step {
+
+    private final Set<Host> hosts;
+    private final DeployedApplication deployedApplication;
+    private final String username;
+
+    /**
+     * @param username the user who planned the deployment, or null when unknown
+     */
+    public ResolveCredentialsStep(Collection<Host> hosts, DeployedApplication deployedApplication, String username) {
+        this.hosts = newLinkedHashSet(hosts);
+        this.deployedApplication = deployedApplication;
+        this.username = username;
+    }
+
+    @Override
+    public int getOrder() {
+        return 0;
+    }
+
+    @Override
+    public String getDescription() {
+        return format("Resolve the personal credentials of %d host(s)", hosts.size());
+    }
+
+    @Override
+    public StepExitCode execute(ExecutionContext ctx) throws Exception {
+        long start = System.currentTimeMillis();
+        List<Step> checkSteps = IdentityContributor.injectCredentials(hosts, deployedApplication, username, Phase.EXECUTION_RESOLUTION);
+        ctx.logOutput(format("Resolved the %s credentials of %d host(s) in %d ms", deployedApplication.getProperty("credentialsType"),
+                hosts.size(), System.currentTimeMillis() - start));
+        if (checkSteps == null) {
+            return StepExitCode.SUCCESS;
+        }
+        for (Step checkStep : checkSteps) {
+            ctx.logOutput(checkStep.getDescription());
+            StepExitCode exitCode = checkStep.execute(ctx);
+            if (exitCode != StepExitCode.SUCCESS) {
+                return exitCode;
+            }
+        }
+        return StepExitCode.SUCCESS;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+
+/**
+ * View of a shared execution context for one of several steps running concurrently. The execution context of the
+ * engine is not thread-safe, so every call is serialized on the shared context; log lines are prefixed with the
+ * name of the step, so the output of concurrent steps can be told apart.
+ */
+class SerializedExecutionContext implements InvocationHandler {
+
+    private final ExecutionContext shared;
+    private final String prefix;
+
+    private SerializedExecutionContext(ExecutionContext shared, String prefix) {
+        this.shared = shared;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @param name prefix of the log lines, or null to log without prefix
+     */
+    static ExecutionContext wrap(ExecutionContext shared, String name) {
+        return (ExecutionContext) Proxy.newProxyInstance(SerializedExecutionContext.class.getClassLoader(),
+                new Class<?>[] { ExecutionContext.class }, new SerializedExecutionContext(shared, name == null ? "" : "[" + name + "] "));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.getName().equals("equals") ? proxy == args[0] : method.invoke(this, args);
+        }
+        if (method.getName().startsWith("log") && args != null && args.length > 0 && args[0] instanceof String) {
+            args = args.clone();
+            args[0] = prefix + args[0];
+        }
+        synchronized (shared) {
+            try {
+                return method.invoke(shared, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
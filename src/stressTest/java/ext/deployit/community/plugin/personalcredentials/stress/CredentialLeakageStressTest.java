@@ -0,0 +1,152 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.stress;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Operation;
+import com.xebialabs.deployit.plugin.api.udm.Deployed;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.deployit.plugin.overthere.HostContainer;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.ci.PersonalCredentialsControlTaskDelegate;
+import ext.deployit.community.plugin.personalcredentials.contributor.IdentityContributor;
+import ext.deployit.community.plugin.personalcredentials.stub.StubContainer;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.StubParameters;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+/**
+ * Plans many deployments and control tasks at the same time on a thread pool, all of them on the same repository
+ * containers and hosts, and checks that every plan only sees the credentials of its own deployment and that the
+ * repository CIs are never written. Sized with the <code>stress.threads</code> (default 16), <code>stress.tasks</code>
+ * (default 5000), <code>stress.hosts</code> (default 20) and <code>stress.deployments</code> (default 50) system
+ * properties.
+ */
+public class CredentialLeakageStressTest {
+
+    private static final int THREADS = Integer.getInteger("stress.threads", 16);
+    private static final int TASKS = Integer.getInteger("stress.tasks", 5000);
+    private static final int HOSTS = Integer.getInteger("stress.hosts", 20);
+    private static final int DEPLOYMENTS = Integer.getInteger("stress.deployments", 50);
+
+    private static final String REPOSITORY_USER = "repository-user";
+
+    private final List<StubHost> hosts = new ArrayList<StubHost>();
+    private final List<StubContainer> containers = new ArrayList<StubContainer>();
+    private final Queue<String> leaks = new ConcurrentLinkedQueue<String>();
+
+    @Test
+    public void concurrentPlansAndControlTasksDoNotLeakCredentials() throws Exception {
+        for (int i = 0; i < HOSTS; i++) {
+            StubHost host = new StubHost("Infrastructure/host-" + i, "10.0.0." + i).with("username", REPOSITORY_USER);
+            hosts.add(host);
+            containers.add(new StubContainer(host.getId() + "/tomcat", host));
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int i = 0; i < TASKS; i++) {
+            final int task = i;
+            futures.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    if (task % 4 == 3) {
+                        runControlTask(task);
+                    } else {
+                        plan(task);
+                    }
+                    checkRepository();
+                    return null;
+                }
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        workers.shutdown();
+        System.out.printf("%d plans and control tasks on %d threads in %d ms%n", TASKS, THREADS, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+
+        checkRepository();
+        assertTrue(leaks.size() + " leak(s), first: " + leaks.peek(), leaks.isEmpty());
+    }
+
+    private void plan(int task) {
+        int deployment = task % DEPLOYMENTS;
+        String username = "user-" + deployment;
+        String password = "secret-" + deployment;
+        StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/test/app-" + deployment,
+                new StubEnvironment("Environments/test"), CredentialsType.CT_USERNAME).with("username", username).with("password", password);
+
+        Random random = new Random(task);
+        List<Deployed<?, ?>> deployeds = new ArrayList<Deployed<?, ?>>();
+        List<Delta> deltas = new ArrayList<Delta>();
+        for (int i = 0, count = 1 + random.nextInt(5); i < count; i++) {
+            StubContainer container = containers.get(random.nextInt(containers.size()));
+            Deployed<?, ?> deployed = Stubs.deployed(container.getId() + "/app-" + deployment + "-" + i, container);
+            deployeds.add(deployed);
+            deltas.add(Stubs.delta(Operation.CREATE, null, deployed));
+        }
+
+        IdentityContributor.injectPersonalCredentials(Stubs.specification(deployedApplication, deltas));
+
+        for (Deployed<?, ?> deployed : deployeds) {
+            Host host = ((HostContainer) deployed.getContainer()).getHost();
+            if (!username.equals(host.getProperty("username")) || !password.equals(host.getProperty("password"))) {
+                leaks.add(String.format("plan %d of %s on %s sees %s/%s", task, username, host.getId(), host.getProperty("username"), host.getProperty("password")));
+            }
+        }
+    }
+
+    private void runControlTask(int task) {
+        StubHost host = hosts.get(task % hosts.size());
+        StubParameters params = new StubParameters().with("unixUsername", "task-" + task).with("unixPassword", "task-secret-" + task);
+        Map<String, String> args = ImmutableMap.of("script", "pc/check");
+        if (task % 8 == 3) {
+            PersonalCredentialsControlTaskDelegate.executedPCScriptDelegate(host, "check", args, params);
+        } else {
+            PersonalCredentialsControlTaskDelegate.executedPCScriptBatchDelegate(host, "check", args, params);
+        }
+    }
+
+    private void checkRepository() {
+        for (StubHost host : hosts) {
+            Object username = host.getProperty("username");
+            Object password = host.getProperty("password");
+            if (!REPOSITORY_USER.equals(username) || password != null) {
+                leaks.add(String.format("repository host %s holds %s/%s", host.getId(), username, password));
+            }
+        }
+    }
+}
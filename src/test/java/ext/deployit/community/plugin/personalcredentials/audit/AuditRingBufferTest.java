@@ -0,0 +1,120 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.audit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AuditRingBufferTest {
+
+    @Test
+    public void drainsRecordsInOfferOrder() {
+        AuditRingBuffer buffer = new AuditRingBuffer(8);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffer.offer(record("host-" + i)));
+        }
+        assertEquals(5, buffer.size());
+
+        List<AuditRecord> batch = new ArrayList<AuditRecord>();
+        assertEquals(3, buffer.drainTo(batch, 3));
+        assertEquals(2, buffer.drainTo(batch, 10));
+        for (int i = 0; i < 5; i++) {
+            assertEquals("host-" + i, batch.get(i).getHostId());
+        }
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void dropsAndCountsRecordsWhenFull() {
+        AuditRingBuffer buffer = new AuditRingBuffer(3);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(record("host-" + i)));
+        }
+        assertFalse(buffer.offer(record("host-4")));
+        assertFalse(buffer.offer(record("host-5")));
+        assertEquals(2, buffer.getDropped());
+
+        buffer.drainTo(new ArrayList<AuditRecord>(), 1);
+        assertTrue(buffer.offer(record("host-6")));
+    }
+
+    @Test
+    public void wrapsAroundTheSlots() {
+        AuditRingBuffer buffer = new AuditRingBuffer(4);
+        List<AuditRecord> batch = new ArrayList<AuditRecord>();
+        for (int i = 0; i < 50; i++) {
+            assertTrue(buffer.offer(record("host-" + i)));
+            assertTrue(buffer.offer(record("host-" + i + "b")));
+            batch.clear();
+            assertEquals(2, buffer.drainTo(batch, 10));
+            assertEquals("host-" + i, batch.get(0).getHostId());
+        }
+        assertEquals(0, buffer.getDropped());
+    }
+
+    @Test
+    public void concurrentProducersLoseNoRecordThatWasAccepted() throws InterruptedException {
+        final AuditRingBuffer buffer = new AuditRingBuffer(1024);
+        final int producers = 8;
+        final int perProducer = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(producers);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < perProducer; i++) {
+                            buffer.offer(record(producer + ":" + i));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        Set<String> received = new HashSet<String>();
+        List<AuditRecord> batch = new ArrayList<AuditRecord>();
+        start.countDown();
+        while (done.getCount() > 0 || buffer.size() > 0) {
+            batch.clear();
+            buffer.drainTo(batch, 256);
+            for (AuditRecord record : batch) {
+                assertTrue("duplicate " + record.getHostId(), received.add(record.getHostId()));
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(producers * perProducer, received.size() + buffer.getDropped());
+    }
+
+    private static AuditRecord record(String hostId) {
+        return new AuditRecord("Environments/test/app", hostId, "CT_USERNAME", "deployedApplication", 10, false);
+    }
+}
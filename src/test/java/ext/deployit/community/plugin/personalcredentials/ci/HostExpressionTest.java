@@ -0,0 +1,94 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.ci;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collection;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubCi;
+import ext.deployit.community.plugin.personalcredentials.stub.StubContainer;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.StubParameters;
+
+public class HostExpressionTest {
+
+    private static final Type TYPE = Type.valueOf("test.Ci");
+
+    private final StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1");
+    private final StubContainer server = new StubContainer("Infrastructure/web-01/tomcat", host);
+    private final StubCi item = new StubCi("Infrastructure/web-01/tomcat/ds").with("server", server).with("label", "ds");
+
+    @Test
+    public void returnsNullForAPlainValue() {
+        assertNull(HostExpression.parse(TYPE, "Infrastructure/web-01"));
+        assertNull(HostExpression.parse(TYPE, "${thisCi.host"));
+    }
+
+    @Test
+    public void parsesAnExpressionOnce() {
+        assertSame(HostExpression.parse(TYPE, "${thisCi.server.host}"), HostExpression.parse(TYPE, "${thisCi.server.host}"));
+    }
+
+    @Test
+    public void walksThePropertiesOfThisCi() {
+        assertSame(host, HostExpression.parse(TYPE, "${thisCi.server.host}").resolve(item, null));
+        assertSame(host, HostExpression.parse(TYPE, "${container.server.host}").resolve(item, null));
+        assertSame(server, HostExpression.parse(TYPE, "${deployed.server}").resolve(item, null));
+    }
+
+    @Test
+    public void aPathWithoutStartStartsAtThisCi() {
+        assertSame(host, HostExpression.parse(TYPE, "${server.host}").resolve(item, null));
+    }
+
+    @Test
+    public void walksThePropertiesOfTheParameters() {
+        StubParameters params = new StubParameters().with("target", server);
+        assertSame(host, HostExpression.parse(TYPE, "${params.target.host}").resolve(item, params));
+    }
+
+    @Test
+    public void resolvesACollectionOfHosts() {
+        StubHost other = new StubHost("Infrastructure/web-02", "10.0.0.2");
+        StubParameters params = new StubParameters().with("targets", asList(host, other));
+        Collection<?> hosts = HostExpression.parse(TYPE, "${params.targets}").resolveAll(item, params);
+        assertEquals(asList(host, other), hosts);
+    }
+
+    @Test
+    public void resolvesASingleHostAsACollection() {
+        Collection<?> hosts = HostExpression.parse(TYPE, "${thisCi.server.host}").resolveAll(item, null);
+        assertEquals(asList(host), asList(hosts.toArray()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnUndefinedProperty() {
+        HostExpression.parse(TYPE, "${thisCi.machine.host}").resolve(item, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANullProperty() {
+        item.setProperty("server", null);
+        HostExpression.parse(TYPE, "${thisCi.server.host}").resolve(item, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnExpressionWithoutProperty() {
+        HostExpression.parse(TYPE, "${thisCi}").resolve(item, null);
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Operation;
+import com.xebialabs.deployit.plugin.api.udm.Deployed;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.deployit.plugin.overthere.HostContainer;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.stub.StubContainer;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+public class ContainerIsolationTest {
+
+    private final StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1").with("username", "repository-user");
+    private final StubContainer tomcat = new StubContainer("Infrastructure/web-01/tomcat", host);
+    private final StubContainer dataSources = new StubContainer("Infrastructure/web-01/tomcat/ds", tomcat);
+
+    private final StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/test/app",
+            new StubEnvironment("Environments/test"), CredentialsType.CT_USERNAME).with("username", "deployer").with("password", "secret");
+
+    @Test
+    public void setsTheCredentialsOnCopiesOfTheContainersOnly() {
+        Deployed<?, ?> war = Stubs.deployed("Infrastructure/web-01/tomcat/app.war", tomcat);
+        Deployed<?, ?> ds = Stubs.deployed("Infrastructure/web-01/tomcat/ds/app-ds", dataSources);
+        Deployed<?, ?> previousDs = Stubs.deployed("Infrastructure/web-01/tomcat/ds/app-ds", dataSources);
+
+        IdentityContributor.injectPersonalCredentials(Stubs.specification(deployedApplication, asList(
+                Stubs.delta(Operation.CREATE, null, war),
+                Stubs.delta(Operation.MODIFY, previousDs, ds))));
+
+        assertEquals("repository-user", host.getProperty("username"));
+        assertNull(host.getProperty("password"));
+
+        Host planHost = ((HostContainer) war.getContainer()).getHost();
+        assertNotSame(host, planHost);
+        assertEquals("deployer", planHost.getProperty("username"));
+        assertEquals("secret", planHost.getProperty("password"));
+    }
+
+    @Test
+    public void deployedsSharingAContainerShareItsCopy() {
+        Deployed<?, ?> war = Stubs.deployed("Infrastructure/web-01/tomcat/app.war", tomcat);
+        Deployed<?, ?> config = Stubs.deployed("Infrastructure/web-01/tomcat/app-config", tomcat);
+        Deployed<?, ?> ds = Stubs.deployed("Infrastructure/web-01/tomcat/ds/app-ds", dataSources);
+
+        IdentityContributor.injectPersonalCredentials(Stubs.specification(deployedApplication, asList(
+                Stubs.delta(Operation.CREATE, null, war),
+                Stubs.delta(Operation.CREATE, null, config),
+                Stubs.delta(Operation.CREATE, null, ds))));
+
+        assertNotSame(tomcat, war.getContainer());
+        assertSame(war.getContainer(), config.getContainer());
+        assertSame(((HostContainer) war.getContainer()).getHost(), ((HostContainer) ds.getContainer()).getHost());
+    }
+
+    @Test
+    public void plansDoNotSeeTheCredentialsOfEachOther() {
+        Deployed<?, ?> first = Stubs.deployed("Infrastructure/web-01/tomcat/app.war", tomcat);
+        IdentityContributor.injectPersonalCredentials(Stubs.specification(deployedApplication, asList(
+                Stubs.delta(Operation.CREATE, null, first))));
+
+        StubDeployedApplication other = new StubDeployedApplication("Environments/test/other",
+                new StubEnvironment("Environments/test"), CredentialsType.CT_USERNAME).with("username", "other").with("password", "other-secret");
+        Deployed<?, ?> second = Stubs.deployed("Infrastructure/web-01/tomcat/other.war", tomcat);
+        IdentityContributor.injectPersonalCredentials(Stubs.specification(other, asList(
+                Stubs.delta(Operation.CREATE, null, second))));
+
+        assertEquals("deployer", ((HostContainer) first.getContainer()).getHost().getProperty("username"));
+        assertEquals("other", ((HostContainer) second.getContainer()).getHost().getProperty("username"));
+    }
+}
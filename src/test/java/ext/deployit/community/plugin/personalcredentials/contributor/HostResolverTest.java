@@ -0,0 +1,82 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Operation;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.deployit.plugin.overthere.HostContainer;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubContainer;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+public class HostResolverTest {
+
+    private final StubHost web = new StubHost("Infrastructure/web-01", "10.0.0.1");
+    private final StubHost db = new StubHost("Infrastructure/db-01", "10.0.0.2");
+    private final StubHost old = new StubHost("Infrastructure/old-01", "10.0.0.3");
+
+    @Test
+    public void resolvesHostsContainersAndNestedContainers() {
+        StubContainer server = new StubContainer("Infrastructure/web-01/tomcat", web);
+        StubContainer dataSource = new StubContainer("Infrastructure/db-01/mysql/ds", new StubContainer("Infrastructure/db-01/mysql", db));
+        HostResolver resolver = new HostResolver();
+        assertSame(web, resolver.toHost(web));
+        assertSame(web, resolver.toHost(server));
+        assertSame(db, resolver.toHost(dataSource));
+        assertNull(resolver.toHost((Host) null));
+    }
+
+    @Test
+    public void listsTheHostsOfTheDeployedSideFirstAndEachHostOnce() {
+        List<Delta> deltas = asList(
+                Stubs.delta(Operation.MODIFY, Stubs.deployed("Infrastructure/old-01/app", old), Stubs.deployed("Infrastructure/web-01/app", web)),
+                Stubs.delta(Operation.CREATE, null, Stubs.deployed("Infrastructure/db-01/app", db)),
+                Stubs.delta(Operation.DESTROY, Stubs.deployed("Infrastructure/web-01/other", web), null));
+        assertEquals(asList(web, db, old), new ArrayList<Host>(HostResolver.resolveHosts(deltas)));
+    }
+
+    @Test
+    public void walksEachContainerOncePerResolution() {
+        CountingContainer server = new CountingContainer("Infrastructure/web-01/tomcat", web);
+        List<Delta> deltas = new ArrayList<Delta>();
+        for (int i = 0; i < 10; i++) {
+            deltas.add(Stubs.delta(Operation.CREATE, null, Stubs.deployed("Infrastructure/web-01/tomcat/app-" + i, server)));
+        }
+        assertEquals(asList(web), new ArrayList<Host>(HostResolver.resolveHosts(deltas)));
+        assertEquals(1, server.lookups);
+    }
+
+    @SuppressWarnings("serial")
+    private static class CountingContainer extends StubContainer {
+        private int lookups;
+
+        CountingContainer(String id, HostContainer parent) {
+            super(id, parent);
+        }
+
+        @Override
+        public Host getHost() {
+            lookups++;
+            return super.getHost();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class InjectionMemoTest {
+
+    private final StubHost web = new StubHost("Infrastructure/web-01", "10.0.0.1");
+    private final StubHost db = new StubHost("Infrastructure/db-01", "10.0.0.2");
+    private final StubEnvironment environment = new StubEnvironment("Environments/test");
+
+    @After
+    public void tearDown() {
+        InjectionMemo.invalidateAll();
+    }
+
+    @Test
+    public void theSamePlanHasTheSameFingerprintWhateverTheHostOrder() {
+        assertEquals(InjectionMemo.fingerprint("scott", deployedApplication(), hosts(web, db)),
+                InjectionMemo.fingerprint("scott", deployedApplication(), hosts(db, web)));
+    }
+
+    @Test
+    public void anotherUserHasAnotherFingerprint() {
+        assertNotEquals(InjectionMemo.fingerprint("scott", deployedApplication(), hosts(web)),
+                InjectionMemo.fingerprint("tiger", deployedApplication(), hosts(web)));
+    }
+
+    @Test
+    public void everyCredentialSourceIsPartOfTheFingerprint() {
+        String fingerprint = InjectionMemo.fingerprint("scott", deployedApplication(), hosts(web));
+        for (String propertyName : new String[] {"credentialsFile", "credentialProvider", "scriptPath", "overrideHostCredentials"}) {
+            assertNotEquals(propertyName, fingerprint,
+                    InjectionMemo.fingerprint("scott", deployedApplication().with(propertyName, "changed"), hosts(web)));
+        }
+    }
+
+    @Test
+    public void aChangedHostAddressHasAnotherFingerprint() {
+        String fingerprint = InjectionMemo.fingerprint("scott", deployedApplication(), hosts(web));
+        web.setProperty("address", "10.0.0.9");
+        assertNotEquals(fingerprint, InjectionMemo.fingerprint("scott", deployedApplication(), hosts(web)));
+    }
+
+    @Test
+    public void theFingerprintDoesNotContainThePassword() {
+        String fingerprint = InjectionMemo.fingerprint("scott", deployedApplication().with("password", "secret"), hosts(web));
+        assertFalse(fingerprint.contains("secret"));
+    }
+
+    @Test
+    public void aKeySelectorWithoutMapsCanBeFingerprinted() {
+        PrivateKeySelectorConfiguration configuration = new PrivateKeySelectorConfiguration() {
+            @Override
+            public Map<String, String> getPrivateKeyIds() {
+                return null;
+            }
+
+            @Override
+            public List<String> getKeySelectionRules() {
+                return null;
+            }
+
+            @Override
+            public Map<String, String> getKeyPassphrases() {
+                return null;
+            }
+        };
+        environment.with("privateKeySelectorConfiguration", configuration);
+        InjectionMemo.fingerprint("scott", deployedApplication(), hosts(web));
+    }
+
+    @Test
+    public void appliesTheMemoizedCredentials() {
+        web.setProperty("username", "scott");
+        web.setProperty("password", "secret");
+        InjectionMemo.put("fingerprint", hosts(web, db));
+
+        StubHost replanned = new StubHost("Infrastructure/web-01", "10.0.0.1");
+        assertTrue(InjectionMemo.apply("fingerprint", hosts(replanned)));
+        assertEquals("scott", replanned.getProperty("username"));
+        assertEquals("secret", replanned.getProperty("password"));
+    }
+
+    @Test
+    public void leavesTheHostsUnchangedWithoutMemoizedCredentials() {
+        assertFalse(InjectionMemo.apply("unknown", hosts(web)));
+        assertNull(web.getProperty("username"));
+    }
+
+    private StubDeployedApplication deployedApplication() {
+        return new StubDeployedApplication("Environments/test/app", environment, CredentialsType.CT_USERNAME)
+                .with("username", "scott");
+    }
+
+    private static Set<Host> hosts(Host... hosts) {
+        Set<Host> set = new LinkedHashSet<Host>();
+        for (Host host : hosts) {
+            set.add(host);
+        }
+        return set;
+    }
+}
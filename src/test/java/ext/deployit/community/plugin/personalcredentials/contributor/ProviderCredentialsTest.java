@@ -0,0 +1,124 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.credentials.HttpCredentialProvider;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class ProviderCredentialsTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean slow;
+    private HttpServer server;
+    private StubDeployedApplication deployedApplication;
+
+    @Before
+    public void startStore() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/credentials", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                StringBuilder answer = new StringBuilder();
+                try (InputStream in = exchange.getRequestBody()) {
+                    for (String hostId : new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8).split("\n")) {
+                        answer.append(hostId).append(".username=").append(hostId.substring(hostId.lastIndexOf('/') + 1)).append('\n');
+                    }
+                }
+                if (slow) {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                byte[] bytes = answer.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        });
+        server.start();
+        deployedApplication = new StubDeployedApplication("Environments/test/app", new StubEnvironment("Environments/test"), CredentialsType.CT_PROVIDER)
+                .with("credentialProvider", HttpCredentialProvider.class.getName())
+                .with("credentialProviderTimeout", 1)
+                .with(HttpCredentialProvider.URL_PROPERTY, "http://127.0.0.1:" + server.getAddress().getPort() + "/credentials");
+    }
+
+    @After
+    public void stopStore() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    public void fetchesTheCredentialsOfAllHostsInOneRequest() {
+        Set<Host> hosts = hosts(25);
+
+        IdentityContributor.injectProviderCredentials(hosts, deployedApplication);
+
+        assertEquals(1, requests.get());
+        for (Host host : hosts) {
+            assertEquals(host.getName(), host.getProperty("username"));
+        }
+    }
+
+    @Test
+    public void failsWhenTheProviderDoesNotAnswerWithinTheTimeout() {
+        slow = true;
+        long start = System.nanoTime();
+        try {
+            IdentityContributor.injectProviderCredentials(hosts(3), deployedApplication);
+            fail();
+        } catch (DeployitException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("did not answer within 1 s"));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+    }
+
+    private static Set<Host> hosts(int count) {
+        Set<Host> hosts = new LinkedHashSet<Host>();
+        for (int i = 0; i < count; i++) {
+            hosts.add(new StubHost("Infrastructure/host-" + i, "10.0.0." + i));
+        }
+        return hosts;
+    }
+}
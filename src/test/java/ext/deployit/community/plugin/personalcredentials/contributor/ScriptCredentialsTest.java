@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.api.udm.Environment;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+import ext.deployit.community.plugin.personalcredentials.script.CredentialScript;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class ScriptCredentialsTest {
+
+    private final StubHost web = new StubHost("Infrastructure/web-01", "10.0.0.1");
+    private final StubHost db = new StubHost("Infrastructure/db-01", "10.0.0.2").with("username", "predefined");
+    private final StubHost app = new StubHost("Infrastructure/app-01", "10.0.0.3");
+
+    @Test
+    public void onlyTheHostsTheScriptChangedAreCached() {
+        Map<Host, HostCredentials> before = IdentityContributor.credentialsOf(hosts());
+        web.setProperty("username", "scott");
+        db.setProperty("username", "predefined");
+
+        Map<Host, HostCredentials> changed = IdentityContributor.changedCredentials(before);
+
+        assertEquals(1, changed.size());
+        assertEquals(new HostCredentials("scott", null, null, null), changed.get(web));
+    }
+
+    @Test
+    public void aHostTheScriptClearedIsNotCached() {
+        Map<Host, HostCredentials> before = IdentityContributor.credentialsOf(hosts());
+        db.setProperty("username", null);
+
+        assertEquals(0, IdentityContributor.changedCredentials(before).size());
+    }
+
+    @Test
+    public void aJavaScriptResolvesAllHostsInOneCall() {
+        int runs = PasswordScript.runs.get();
+
+        IdentityContributor.executeCustomScript(hosts(), javaScript(), null);
+
+        assertEquals(runs + 1, PasswordScript.runs.get());
+        assertEquals("secret", web.getProperty("password"));
+        assertEquals("secret", app.getProperty("password"));
+    }
+
+    @Test(expected = DeployitException.class)
+    public void scriptPerHostFailsWithTheJavaEngine() {
+        IdentityContributor.executeCustomScript(hosts(), javaScript().with("scriptPerHost", true), null);
+    }
+
+    private StubDeployedApplication javaScript() {
+        return new StubDeployedApplication("Environments/test/app", new StubEnvironment("Environments/test"), CredentialsType.CT_CUSTOM_SCRIPT)
+                .with("scriptEngine", "java")
+                .with("scriptPath", PasswordScript.class.getName());
+    }
+
+    private Set<Host> hosts() {
+        Set<Host> hosts = new LinkedHashSet<Host>();
+        hosts.add(web);
+        hosts.add(db);
+        hosts.add(app);
+        return hosts;
+    }
+
+    public static class PasswordScript implements CredentialScript {
+
+        static final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public void execute(DeployedApplication deployedApplication, Environment environment, Set<Host> hosts, Logger logger) {
+            runs.incrementAndGet();
+            for (Host host : hosts) {
+                host.setProperty("password", "secret");
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Resources;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class SelectedSshKeysTest {
+
+    private final Map<String, String> keyPassphrases = new HashMap<String, String>();
+    private final StubHost web = new StubHost("Infrastructure/web-01", "10.0.0.1").withTags("web").with("passphrase", "host-passphrase");
+    private final StubHost db = new StubHost("Infrastructure/db-01", "10.0.0.2").withTags("db").with("passphrase", "host-passphrase");
+    private final StubHost other = new StubHost("Infrastructure/other-01", "10.0.0.3").with("passphrase", "host-passphrase");
+    private StubDeployedApplication deployedApplication;
+
+    @Before
+    public void setUp() {
+        final Map<String, String> privateKeyIds = new HashMap<String, String>();
+        privateKeyIds.put("webKey", fixture("rsa-traditional-aes.pem"));
+        privateKeyIds.put("dbKey", fixture("ed25519-openssh-encrypted"));
+        privateKeyIds.put("defaultKey", fixture("rsa-pkcs8-encrypted.pem"));
+        PrivateKeySelectorConfiguration configuration = new PrivateKeySelectorConfiguration() {
+            @Override
+            public String getId() {
+                return "Configuration/keys-" + System.identityHashCode(this);
+            }
+
+            @Override
+            public Map<String, String> getPrivateKeyIds() {
+                return privateKeyIds;
+            }
+
+            @Override
+            public List<String> getKeySelectionRules() {
+                return asList("tag:web=webKey", "tag:db=dbKey");
+            }
+
+            @Override
+            public Map<String, String> getKeyPassphrases() {
+                return keyPassphrases;
+            }
+        };
+        StubEnvironment environment = new StubEnvironment("Environments/test").with("privateKeySelectorConfiguration", configuration);
+        deployedApplication = new StubDeployedApplication("Environments/test/app", environment, CredentialsType.CT_PRIVATEKEY_SELECTOR)
+                .with("privateKey", "defaultKey").with("passphrase", "secret");
+    }
+
+    @Test
+    public void aKeyWithItsOwnPassphraseGetsIt() {
+        keyPassphrases.put("webKey", "secret");
+        IdentityContributor.injectSshKeys(hosts(web), deployedApplication, true);
+        assertEquals(fixture("rsa-traditional-aes.pem"), web.getProperty("privateKeyFile"));
+        assertEquals("secret", web.getProperty("passphrase"));
+    }
+
+    @Test
+    public void aRuleSelectedKeyDoesNotGetThePassphraseOfTheDeployedApplication() {
+        IdentityContributor.injectSshKeys(hosts(db), deployedApplication, true);
+        assertEquals(fixture("ed25519-openssh-encrypted"), db.getProperty("privateKeyFile"));
+        assertEquals("host-passphrase", db.getProperty("passphrase"));
+    }
+
+    @Test
+    public void theKeyOfTheDeployedApplicationGetsItsPassphrase() {
+        IdentityContributor.injectSshKeys(hosts(other), deployedApplication, true);
+        assertEquals(fixture("rsa-pkcs8-encrypted.pem"), other.getProperty("privateKeyFile"));
+        assertEquals("secret", other.getProperty("passphrase"));
+    }
+
+    @Test
+    public void eachHostGetsThePassphraseOfItsKey() {
+        keyPassphrases.put("webKey", "secret");
+        keyPassphrases.put("dbKey", "secret");
+        IdentityContributor.injectSshKeys(hosts(web, db, other), deployedApplication, true);
+        assertEquals(fixture("rsa-traditional-aes.pem"), web.getProperty("privateKeyFile"));
+        assertEquals(fixture("ed25519-openssh-encrypted"), db.getProperty("privateKeyFile"));
+        assertEquals(fixture("rsa-pkcs8-encrypted.pem"), other.getProperty("privateKeyFile"));
+        assertEquals("secret", db.getProperty("passphrase"));
+    }
+
+    @Test(expected = DeployitException.class)
+    public void aWrongKeyPassphraseFailsThePlan() {
+        keyPassphrases.put("dbKey", "wrong");
+        IdentityContributor.injectSshKeys(hosts(db), deployedApplication, true);
+    }
+
+    @Test
+    public void doesNotSetTheUsername() {
+        IdentityContributor.injectSshKeys(hosts(db), deployedApplication, true);
+        assertNull(db.getProperty("username"));
+    }
+
+    private static Set<Host> hosts(Host... hosts) {
+        return new LinkedHashSet<Host>(asList(hosts));
+    }
+
+    private static String fixture(String name) {
+        try {
+            return new File(Resources.getResource("keys/" + name).toURI()).getPath();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.contributor;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.ci.SubnetCredentialsConfiguration;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class SubnetUsernamesTest {
+
+    private final StubHost inSubnet = new StubHost("Infrastructure/web-01", "10.1.0.1");
+    private final StubHost outside = new StubHost("Infrastructure/web-02", "192.168.0.1");
+
+    @Test
+    public void anEnvironmentFullyCoveredBySubnetsNeedsNoUsernameOnTheDeployedApplication() {
+        StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/test/app", environment(), CredentialsType.CT_USERNAME);
+
+        IdentityContributor.injectUsernames(hosts(inSubnet), deployedApplication);
+
+        assertEquals("subnet-user", inSubnet.getProperty("username"));
+        assertEquals("subnet-secret", inSubnet.getProperty("password"));
+    }
+
+    @Test
+    public void hostsOutsideTheSubnetsGetTheCredentialsOfTheDeployedApplication() {
+        StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/test/app", environment(), CredentialsType.CT_USERNAME)
+                .with("username", "deployer").with("password", "tiger");
+
+        IdentityContributor.injectUsernames(hosts(inSubnet, outside), deployedApplication);
+
+        assertEquals("subnet-user", inSubnet.getProperty("username"));
+        assertEquals("deployer", outside.getProperty("username"));
+        assertEquals("tiger", outside.getProperty("password"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void aHostOutsideTheSubnetsNeedsTheCredentialsOfTheDeployedApplication() {
+        StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/test/app", environment(), CredentialsType.CT_USERNAME);
+        IdentityContributor.injectUsernames(hosts(inSubnet, outside), deployedApplication);
+    }
+
+    private static StubEnvironment environment() {
+        final Map<String, String> usernames = new HashMap<String, String>();
+        usernames.put("10.1.0.0/16", "subnet-user");
+        final Map<String, String> passwords = new HashMap<String, String>();
+        passwords.put("10.1.0.0/16", "subnet-secret");
+        SubnetCredentialsConfiguration configuration = new SubnetCredentialsConfiguration() {
+            @Override
+            public String getId() {
+                return "Configuration/subnets";
+            }
+
+            @Override
+            public Map<String, String> getUsernames() {
+                return usernames;
+            }
+
+            @Override
+            public Map<String, String> getPasswords() {
+                return passwords;
+            }
+        };
+        return new StubEnvironment("Environments/test").with("subnetCredentialsConfiguration", configuration);
+    }
+
+    private static Set<Host> hosts(Host... hosts) {
+        return new LinkedHashSet<Host>(asList(hosts));
+    }
+}
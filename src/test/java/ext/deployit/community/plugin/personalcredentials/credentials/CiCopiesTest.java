@@ -0,0 +1,55 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.HostContainer;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubCi;
+import ext.deployit.community.plugin.personalcredentials.stub.StubContainer;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class CiCopiesTest {
+
+    @Test
+    public void copiesDeeply() {
+        StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1").with("username", "scott");
+        StubHost copy = CiCopies.copy(host);
+
+        assertNotSame(host, copy);
+        assertEquals("scott", copy.getProperty("username"));
+        copy.setProperty("username", "tiger");
+        assertEquals("scott", host.getProperty("username"));
+    }
+
+    @Test
+    public void itemsSharingACiShareItsCopy() {
+        StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1");
+        List<HostContainer> copies = CiCopies.copy(asList((HostContainer) new StubContainer("Infrastructure/web-01/a", host),
+                new StubContainer("Infrastructure/web-01/b", host)));
+
+        assertNotSame(host, copies.get(0).getHost());
+        assertSame(copies.get(0).getHost(), copies.get(1).getHost());
+    }
+
+    @Test(expected = DeployitException.class)
+    public void failsOnAnItemThatCannotBeSerialized() {
+        CiCopies.copy(new StubCi("Infrastructure/thread").with("thread", new Object()));
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.google.common.io.BaseEncoding;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+public class CredentialCipherTest {
+
+    @Test
+    public void decryptsWhatItEncrypted() {
+        HostCredentials credentials = new HostCredentials("deployer", "s3cr\u00e9t", "/keys/id_rsa", "phrase");
+        assertEquals(credentials, CredentialCipher.decrypt(CredentialCipher.encrypt(credentials)));
+    }
+
+    @Test
+    public void keepsNullValues() {
+        HostCredentials decrypted = CredentialCipher.decrypt(CredentialCipher.encrypt(new HostCredentials("deployer", null, null, null)));
+        assertEquals("deployer", decrypted.getUsername());
+        assertNull(decrypted.getPassword());
+        assertNull(decrypted.getPrivateKeyFile());
+        assertNull(decrypted.getPassphrase());
+    }
+
+    @Test
+    public void usesAFreshIvPerEncryption() {
+        HostCredentials credentials = new HostCredentials("deployer", "secret", null, null);
+        assertFalse(Arrays.equals(CredentialCipher.encrypt(credentials), CredentialCipher.encrypt(credentials)));
+    }
+
+    @Test
+    public void doesNotStoreThePasswordInClear() {
+        byte[] encrypted = CredentialCipher.encrypt(new HostCredentials("deployer", "clearly-visible", null, null));
+        assertFalse(new String(encrypted, StandardCharsets.ISO_8859_1).contains("clearly-visible"));
+    }
+
+    @Test
+    public void macIsAKeyedHash() throws Exception {
+        String mac = CredentialCipher.mac("secret");
+        assertEquals(mac, CredentialCipher.mac("secret"));
+        assertFalse(mac.equals(CredentialCipher.mac("secret2")));
+        String sha256 = BaseEncoding.base16().lowerCase().encode(MessageDigest.getInstance("SHA-256").digest("secret".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(mac.equals(sha256));
+        assertEquals(64, mac.length());
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsTamperedCiphertext() {
+        byte[] encrypted = CredentialCipher.encrypt(new HostCredentials("deployer", "secret", null, null));
+        encrypted[encrypted.length - 1] ^= 1;
+        CredentialCipher.decrypt(encrypted);
+    }
+}
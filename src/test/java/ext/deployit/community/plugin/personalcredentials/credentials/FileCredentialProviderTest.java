@@ -0,0 +1,89 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class FileCredentialProviderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/test/app",
+            new StubEnvironment("Environments/test"), CredentialsType.CT_PROVIDER);
+    private final StubHost web = new StubHost("Infrastructure/web-01", "10.0.0.1");
+    private final StubHost db = new StubHost("Infrastructure/db-01", "10.0.0.2");
+
+    @Test
+    public void readsTheCredentialsOfTheHostsInTheFile() throws Exception {
+        File file = folder.newFile("credentials.properties");
+        Files.write("Infrastructure/web-01.username=scott\nInfrastructure/web-01.password=tiger\nInfrastructure/other.username=x\n", file, StandardCharsets.UTF_8);
+        deployedApplication.setProperty(FileCredentialProvider.CREDENTIALS_FILE_PROPERTY, file.getPath());
+
+        Map<String, HostCredentials> credentials = new FileCredentialProvider().fetchCredentials(deployedApplication, hosts()).get();
+
+        assertEquals(1, credentials.size());
+        assertEquals(new HostCredentials("scott", "tiger", null, null), credentials.get(web.getId()));
+        assertFalse(credentials.containsKey(db.getId()));
+    }
+
+    @Test
+    public void namesTheMissingPropertyWhenTheFileIsNotSet() {
+        deployedApplication.setProperty(FileCredentialProvider.CREDENTIALS_FILE_PROPERTY, null);
+        try {
+            new FileCredentialProvider().fetchCredentials(deployedApplication, hosts());
+            fail();
+        } catch (DeployitException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(FileCredentialProvider.CREDENTIALS_FILE_PROPERTY));
+            assertTrue(e.getMessage(), e.getMessage().contains(deployedApplication.getId()));
+        }
+    }
+
+    @Test(expected = DeployitException.class)
+    public void failsWhenThePropertyIsNotDefined() {
+        new FileCredentialProvider().fetchCredentials(deployedApplication, hosts());
+    }
+
+    @Test(expected = DeployitException.class)
+    public void failsWhenTheFileCannotBeRead() throws IOException {
+        deployedApplication.setProperty(FileCredentialProvider.CREDENTIALS_FILE_PROPERTY, new File(folder.getRoot(), "missing.properties").getPath());
+        new FileCredentialProvider().fetchCredentials(deployedApplication, hosts());
+    }
+
+    private Set<Host> hosts() {
+        Set<Host> hosts = new LinkedHashSet<Host>();
+        hosts.add(web);
+        hosts.add(db);
+        return hosts;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static com.google.common.collect.Maps.newHashMap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+/**
+ * A stand-in for a remote credential store: posts the ids of all hosts, one per line, in a single request to the
+ * 'credentialProviderUrl' of the deployed application and reads the answer in the format of the credentials file.
+ * The request runs on an executor, so a slow store is bounded by 'credentialProviderTimeout'.
+ */
+public class HttpCredentialProvider implements CredentialProvider {
+
+    public static final String URL_PROPERTY = "credentialProviderUrl";
+
+    private final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("http-credential-provider-%d").setDaemon(true).build()));
+
+    @Override
+    public Future<Map<String, HostCredentials>> fetchCredentials(DeployedApplication deployedApplication, final Set<Host> hosts) {
+        final String url = deployedApplication.getProperty(URL_PROPERTY);
+        return executor.submit(new Callable<Map<String, HostCredentials>>() {
+            @Override
+            public Map<String, HostCredentials> call() throws IOException {
+                return request(url, hosts);
+            }
+        });
+    }
+
+    private static Map<String, HostCredentials> request(String url, Set<Host> hosts) throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (Host host : hosts) {
+            body.append(host.getId()).append('\n');
+        }
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Properties properties = new Properties();
+        try (InputStream in = connection.getInputStream(); Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } finally {
+            connection.disconnect();
+        }
+        Map<String, HostCredentials> credentials = newHashMap();
+        for (Host host : hosts) {
+            String prefix = host.getId() + ".";
+            credentials.put(host.getId(), new HostCredentials(
+                    properties.getProperty(prefix + HostCredentials.USERNAME),
+                    properties.getProperty(prefix + HostCredentials.PASSWORD),
+                    properties.getProperty(prefix + HostCredentials.PRIVATE_KEY_FILE),
+                    properties.getProperty(prefix + HostCredentials.PASSPHRASE)));
+        }
+        return credentials;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.overthere.OperatingSystemFamily;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class SubnetCredentialsTest {
+
+    private final Map<String, String> usernames = new LinkedHashMap<String, String>();
+    private final Map<String, String> passwords = new LinkedHashMap<String, String>();
+
+    @Test
+    public void theLongestMatchingSubnetWins() {
+        set("10.0.0.0/8", "wide");
+        set("10.1.0.0/16", "narrow");
+        SubnetCredentials credentials = compile();
+
+        assertEquals("narrow", credentials.lookup(host("10.1.2.3")).getUsername());
+        assertEquals("wide", credentials.lookup(host("10.2.0.1")).getUsername());
+        assertNull(credentials.lookup(host("192.168.0.1")));
+    }
+
+    @Test
+    public void normalizesTheNetworkAddressOfABlock() {
+        set(" 10.1.2.3/16 ", "deployer");
+        assertEquals("deployer", compile().lookup(host("10.1.200.1")).getUsername());
+    }
+
+    @Test
+    public void anAddressWithoutPrefixLengthIsASingleHost() {
+        set("10.1.2.3", "single");
+        SubnetCredentials credentials = compile();
+
+        assertEquals("single", credentials.lookup(host("10.1.2.3")).getUsername());
+        assertNull(credentials.lookup(host("10.1.2.4")));
+    }
+
+    @Test
+    public void matchesIpv6Subnets() {
+        set("2001:db8::/32", "v6");
+        assertEquals("v6", compile().lookup(host("2001:db8:1::1")).getUsername());
+    }
+
+    @Test
+    public void aSetForTheOsOfTheHostWinsOverASetForAnyOs() {
+        set("10.1.0.0/16", "any");
+        set("10.1.0.0/16@WINDOWS", "windows");
+        SubnetCredentials credentials = compile();
+
+        assertEquals("windows", credentials.lookup(host("10.1.0.1").withOs(OperatingSystemFamily.WINDOWS)).getUsername());
+        assertEquals("any", credentials.lookup(host("10.1.0.1").withOs(OperatingSystemFamily.UNIX)).getUsername());
+    }
+
+    @Test
+    public void aLongerSubnetWithoutASetForTheOsFallsBackToAShorterOne() {
+        set("10.0.0.0/8@UNIX", "unix");
+        set("10.1.0.0/16@WINDOWS", "windows");
+        SubnetCredentials credentials = compile();
+
+        assertEquals("unix", credentials.lookup(host("10.1.0.1").withOs(OperatingSystemFamily.UNIX)).getUsername());
+        assertEquals("windows", credentials.lookup(host("10.1.0.1").withOs(OperatingSystemFamily.WINDOWS)).getUsername());
+    }
+
+    @Test
+    public void hostNamesAreNotResolved() {
+        set("0.0.0.0/0", "everyone");
+        assertNull(compile().lookup(host("localhost")));
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsAnInvalidAddress() {
+        set("10.1.0/16", "deployer");
+        compile();
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsAPrefixLengthLongerThanTheAddress() {
+        set("10.1.0.0/33", "deployer");
+        compile();
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsAnUnknownOperatingSystem() {
+        set("10.1.0.0/16@SOLARIS", "deployer");
+        compile();
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsASetWithoutPassword() {
+        usernames.put("10.1.0.0/16", "deployer");
+        compile();
+    }
+
+    private void set(String key, String username) {
+        usernames.put(key, username);
+        passwords.put(key, "secret");
+    }
+
+    private SubnetCredentials compile() {
+        return new SubnetCredentials(usernames, passwords);
+    }
+
+    private static StubHost host(String address) {
+        return new StubHost("Infrastructure/" + address, address);
+    }
+}
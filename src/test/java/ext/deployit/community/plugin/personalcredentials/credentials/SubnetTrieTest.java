@@ -0,0 +1,75 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.credentials;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
+public class SubnetTrieTest {
+
+    private SubnetTrie<String> trie;
+
+    @Before
+    public void setUp() throws UnknownHostException {
+        trie = new SubnetTrie<String>();
+        trie.put(ip("10.0.0.0"), 8, "10/8");
+        trie.put(ip("10.1.0.0"), 16, "10.1/16");
+        trie.put(ip("10.1.2.0"), 24, "10.1.2/24");
+        trie.put(ip("192.168.1.17"), 32, "host");
+        trie.put(ip("2001:db8::"), 32, "v6");
+    }
+
+    @Test
+    public void returnsTheLongestMatchingPrefix() throws UnknownHostException {
+        assertEquals("10.1.2/24", trie.longestMatch(ip("10.1.2.3"), Predicates.<String>alwaysTrue()));
+        assertEquals("10.1/16", trie.longestMatch(ip("10.1.3.3"), Predicates.<String>alwaysTrue()));
+        assertEquals("10/8", trie.longestMatch(ip("10.200.0.1"), Predicates.<String>alwaysTrue()));
+        assertEquals("host", trie.longestMatch(ip("192.168.1.17"), Predicates.<String>alwaysTrue()));
+    }
+
+    @Test
+    public void returnsNullOutsideOfAllPrefixes() throws UnknownHostException {
+        assertNull(trie.longestMatch(ip("11.0.0.1"), Predicates.<String>alwaysTrue()));
+        assertNull(trie.longestMatch(ip("192.168.1.18"), Predicates.<String>alwaysTrue()));
+    }
+
+    @Test
+    public void fallsBackToShorterPrefixesTheFilterAccepts() throws UnknownHostException {
+        Predicate<String> notSlash24 = Predicates.not(Predicates.equalTo("10.1.2/24"));
+        assertEquals("10.1/16", trie.longestMatch(ip("10.1.2.3"), notSlash24));
+    }
+
+    @Test
+    public void keepsIpv4AndIpv6Apart() throws UnknownHostException {
+        assertEquals("v6", trie.longestMatch(ip("2001:db8::1"), Predicates.<String>alwaysTrue()));
+        assertNull(trie.longestMatch(ip("2001:db9::1"), Predicates.<String>alwaysTrue()));
+        assertNull(trie.longestMatch(ip("::a01:203"), Predicates.<String>alwaysTrue()));
+    }
+
+    @Test
+    public void aZeroLengthPrefixMatchesEveryAddress() throws UnknownHostException {
+        trie.put(ip("0.0.0.0"), 0, "default");
+        assertEquals("default", trie.longestMatch(ip("172.16.0.1"), Predicates.<String>alwaysTrue()));
+        assertEquals("10/8", trie.longestMatch(ip("10.2.0.1"), Predicates.<String>alwaysTrue()));
+    }
+
+    private static byte[] ip(String address) throws UnknownHostException {
+        return InetAddress.getByName(address).getAddress();
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.keys;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+
+import ext.deployit.community.plugin.personalcredentials.ci.PrivateKeySelectorConfiguration;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class KeySelectionRulesTest {
+
+    private final StubHost web = new StubHost("Infrastructure/prod/web-01", "10.1.2.3").withTags("web", "prod");
+    private final StubHost db = new StubHost("Infrastructure/prod/db-01", "10.1.9.9").withTags("db", "prod");
+    private final StubHost test = new StubHost("Infrastructure/test/web-01", "172.16.0.4").withTags("web");
+
+    @Test
+    public void matchesIdsWithGlobs() {
+        KeySelectionRules rules = new KeySelectionRules(asList("id:Infrastructure/prod/*=prod-key", "id:Infrastructure/**=any-key"));
+        assertEquals("prod-key", rules.select(web));
+        assertEquals("any-key", rules.select(test));
+    }
+
+    @Test
+    public void aSingleStarDoesNotMatchSlashes() {
+        KeySelectionRules rules = new KeySelectionRules(asList("id:Infrastructure/*=key"));
+        assertNull(rules.select(web));
+    }
+
+    @Test
+    public void questionMarkMatchesOneCharacter() {
+        KeySelectionRules rules = new KeySelectionRules(asList("address:10.1.?.3=key"));
+        assertEquals("key", rules.select(web));
+        assertNull(rules.select(db));
+    }
+
+    @Test
+    public void matchesAddressesWithRegularExpressions() {
+        KeySelectionRules rules = new KeySelectionRules(asList("address:/172\\.16\\.\\d+\\.\\d+/=lab-key"));
+        assertEquals("lab-key", rules.select(test));
+        assertNull(rules.select(web));
+    }
+
+    @Test
+    public void matchesLiteralAndGlobTags() {
+        KeySelectionRules rules = new KeySelectionRules(asList("tag:db=db-key", "tag:pro*=prod-key"));
+        assertEquals("db-key", rules.select(db));
+        assertEquals("prod-key", rules.select(web));
+        assertNull(rules.select(test));
+    }
+
+    @Test
+    public void theFirstMatchingRuleInConfigurationOrderWins() {
+        KeySelectionRules rules = new KeySelectionRules(asList("tag:prod=by-tag", "id:Infrastructure/prod/web-01=by-id", "address:10.**=by-address"));
+        assertEquals("by-tag", rules.select(web));
+
+        rules = new KeySelectionRules(asList("address:10.**=by-address", "tag:prod=by-tag"));
+        assertEquals("by-address", rules.select(web));
+    }
+
+    @Test
+    public void skipsBlankLines() {
+        KeySelectionRules rules = new KeySelectionRules(asList("", "  ", "tag:web=web-key"));
+        assertEquals(1, rules.size());
+        assertEquals("web-key", rules.select(test));
+    }
+
+    @Test
+    public void noRulesSelectNothing() {
+        KeySelectionRules rules = new KeySelectionRules(Collections.<String>emptyList());
+        assertEquals(true, rules.isEmpty());
+        assertNull(rules.select(web));
+    }
+
+    @Test
+    public void aConfigurationWithoutRulesHasNoRules() {
+        PrivateKeySelectorConfiguration configuration = new PrivateKeySelectorConfiguration() {
+            @Override
+            public String getId() {
+                return "Configuration/without-rules";
+            }
+
+            @Override
+            public List<String> getKeySelectionRules() {
+                return null;
+            }
+        };
+        assertEquals(true, KeySelectionRules.of(configuration).isEmpty());
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsAnUnknownField() {
+        new KeySelectionRules(asList("name:web-01=key"));
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsARuleWithoutKey() {
+        new KeySelectionRules(asList("tag:web="));
+    }
+
+    @Test(expected = DeployitException.class)
+    public void rejectsAnInvalidRegularExpression() {
+        new KeySelectionRules(asList("id:/[a-/=key"));
+    }
+}
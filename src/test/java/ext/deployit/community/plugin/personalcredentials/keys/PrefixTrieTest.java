@@ -0,0 +1,74 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.keys;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class PrefixTrieTest {
+
+    @Test
+    public void collectsTheRulesOfEveryPrefixOfTheValue() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("Infrastructure/", 0);
+        trie.add("Infrastructure/web", 1);
+        trie.add("Infrastructure/db", 2);
+        trie.add("Infrastructure/web-01/", 3);
+
+        BitSet candidates = new BitSet();
+        trie.collect("Infrastructure/web-01", candidates);
+        assertEquals(bits(0, 1), candidates);
+    }
+
+    @Test
+    public void theEmptyPrefixMatchesEverything() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("", 4);
+        trie.add("x", 5);
+
+        BitSet candidates = new BitSet();
+        trie.collect("abc", candidates);
+        assertEquals(bits(4), candidates);
+    }
+
+    @Test
+    public void aPrefixMayBelongToSeveralRules() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("10.0.", 0);
+        trie.add("10.0.", 7);
+
+        BitSet candidates = new BitSet();
+        trie.collect("10.0.0.1", candidates);
+        assertEquals(bits(0, 7), candidates);
+    }
+
+    @Test
+    public void collectingIntoANonEmptySetKeepsEarlierCandidates() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.add("a", 1);
+
+        BitSet candidates = bits(3);
+        trie.collect("b", candidates);
+        assertTrue(candidates.get(3));
+        assertEquals(1, candidates.cardinality());
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+}
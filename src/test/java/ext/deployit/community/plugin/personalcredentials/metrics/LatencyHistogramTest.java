@@ -0,0 +1,63 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void reportsNothingWithoutSamples() {
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMillis(), 0);
+        assertEquals(0, histogram.getPercentileMillis(99), 0);
+    }
+
+    @Test
+    public void reportsPercentilesAsTheUpperBoundOfTheirBucket() {
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(0.128, histogram.getPercentileMillis(50), 0.0001);
+        assertEquals(0.128, histogram.getPercentileMillis(99), 0.0001);
+        assertEquals(50, histogram.getPercentileMillis(100), 0.0001);
+        assertEquals(50, histogram.getMaxMillis(), 0.0001);
+    }
+
+    @Test
+    public void aPercentileNeverExceedsTheMaximum() {
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(600));
+        assertEquals(0.6, histogram.getPercentileMillis(50), 0.0001);
+    }
+
+    @Test
+    public void computesTheMean() {
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        assertEquals(2, histogram.getMeanMillis(), 0.0001);
+    }
+
+    @Test
+    public void resetForgetsAllSamples() {
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMillis(), 0);
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Counter;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics.Phase;
+
+public class PlanningMetricsTest {
+
+    private final PlanningMetrics metrics = PlanningMetrics.getInstance();
+
+    @After
+    public void disable() {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    @Test
+    public void recordsNothingWhileDisabled() {
+        metrics.setEnabled(false);
+        assertEquals(0, PlanningMetrics.start());
+
+        PlanningMetrics.record(Phase.PLANNING, System.nanoTime());
+        PlanningMetrics.recordNanos(Phase.PLANNING, 1000);
+        PlanningMetrics.increment(Counter.HOSTS_PROCESSED, 3);
+
+        assertEquals(0, metrics.getPhaseCount("PLANNING"));
+        assertEquals(0, metrics.getHostsProcessed());
+    }
+
+    @Test
+    public void recordsPhasesAndCountersWhileEnabled() {
+        metrics.setEnabled(true);
+
+        PlanningMetrics.record(Phase.HOST_RESOLUTION, PlanningMetrics.start());
+        PlanningMetrics.recordNanos(Phase.HOST_RESOLUTION, 1000);
+        PlanningMetrics.increment(Counter.HOSTS_PROCESSED, 3);
+        PlanningMetrics.increment(Counter.HOSTS_PROCESSED, 2);
+
+        assertEquals(2, metrics.getPhaseCount("host_resolution"));
+        assertEquals(5, metrics.getHostsProcessed());
+        assertTrue(metrics.getSummary(), metrics.getSummary().contains("HOST_RESOLUTION"));
+    }
+
+    @Test
+    public void aPhaseStartedWhileDisabledIsNotRecorded() {
+        long start = PlanningMetrics.start();
+        metrics.setEnabled(true);
+        PlanningMetrics.record(Phase.PLANNING, start);
+        assertEquals(0, metrics.getPhaseCount("PLANNING"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnUnknownPhase() {
+        metrics.getPhaseCount("COMPILATION");
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.xebialabs.deployit.engine.spi.exception.DeployitException;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.overthere.OperatingSystemFamily;
+
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class HostIndexTest {
+
+    private final StubHost web = new StubHost("Infrastructure/web-01", "10.0.0.1").withTags("web", "dmz");
+    private final StubHost db = new StubHost("Infrastructure/db-01", "10.0.0.2").withTags("db");
+    private final StubHost win = new StubHost("Infrastructure/win-01", "10.0.0.3").withOs(OperatingSystemFamily.WINDOWS);
+    private final StubHost webAlias = new StubHost("Infrastructure/web-01-alias", "10.0.0.1");
+    private final HostIndex index = new HostIndex(asList((Host) web, db, win, webAlias));
+
+    @Test
+    public void indexesTheHostsByIdAddressOsAndTag() {
+        assertEquals(4, index.size());
+        assertSame(db, index.byId("Infrastructure/db-01"));
+        assertNull(index.byId("Infrastructure/unknown"));
+        assertEquals(asList(web, webAlias), index.byAddress("10.0.0.1"));
+        assertEquals(asList(win), index.byOs("WINDOWS"));
+        assertEquals(asList(web), index.byTag("dmz"));
+        assertTrue(index.byTag("none").isEmpty());
+    }
+
+    @Test
+    public void setsCredentialsById() {
+        Map<String, Object> credentials = ImmutableMap.<String, Object>of(
+                "Infrastructure/web-01", ImmutableMap.of("username", "scott", "password", "tiger"),
+                "Infrastructure/db-01", new HostCredentials("dba", null, null, null));
+
+        assertEquals(2, index.setCredentials(credentials));
+        assertEquals("scott", web.getProperty("username"));
+        assertEquals("tiger", web.getProperty("password"));
+        assertEquals("dba", db.getProperty("username"));
+    }
+
+    @Test
+    public void anUnknownHostIdFailsBeforeAnyHostIsModified() {
+        try {
+            index.setCredentials(ImmutableMap.<String, Object>of(
+                    "Infrastructure/web-01", ImmutableMap.of("username", "scott"),
+                    "Infrastructure/unknown", ImmutableMap.of("username", "scott")));
+            fail("Expected the unknown host to be rejected");
+        } catch (DeployitException expected) {
+        }
+        assertNull(web.getProperty("username"));
+    }
+
+    @Test
+    public void setsCredentialsOnAllHostsWithAnAddress() {
+        assertEquals(2, index.setCredentialsByAddress(ImmutableMap.<String, Object>of(
+                "10.0.0.1", ImmutableMap.of("username", "scott"),
+                "10.9.9.9", ImmutableMap.of("username", "ignored"))));
+        assertEquals("scott", web.getProperty("username"));
+        assertEquals("scott", webAlias.getProperty("username"));
+    }
+
+    @Test
+    public void doesNotCountHostsThatAlreadyHaveTheCredentials() {
+        db.setProperty("privateKeyFile", "/keys/db");
+        assertEquals(0, index.setPrivateKey(index.byTag("db"), "/keys/db", null));
+        assertEquals(1, index.setPrivateKey(index.byTag("db"), "/keys/db-new", null));
+    }
+
+    @Test
+    public void isBoundToCustomScripts() {
+        ScriptRunner.executeScript(null, null, new LinkedHashSet<Host>(asList((Host) web, win)), "test-scripts/hostindex.py", "");
+
+        assertEquals("deployer", web.getProperty("username"));
+        assertEquals("unix-secret", web.getProperty("password"));
+        assertEquals("administrator", win.getProperty("username"));
+        assertEquals("windows-secret", win.getProperty("password"));
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class ScriptCacheTest {
+
+    private static final String SCRIPT = "script-cache-test.py";
+
+    private final File extDirectory = new File(".", ScriptRunner.SCRIPT_PATH);
+    private final File script = new File(extDirectory, SCRIPT);
+    private boolean createdExtDirectory;
+
+    @Before
+    public void setUp() {
+        createdExtDirectory = extDirectory.mkdirs();
+        ScriptCache.invalidateAll();
+    }
+
+    @After
+    public void tearDown() {
+        script.delete();
+        if (createdExtDirectory) {
+            extDirectory.delete();
+        }
+        ScriptCache.invalidateAll();
+    }
+
+    @Test
+    public void readsAnUnchangedScriptOnce() throws IOException {
+        write("print 'one'", 1000000000000L);
+        long reloads = ScriptCache.getReloadCount();
+
+        ScriptCache.ScriptSource first = ScriptCache.get(SCRIPT);
+        ScriptCache.ScriptSource second = ScriptCache.get(SCRIPT);
+
+        assertSame(first, second);
+        assertEquals("print 'one'", second.getScript());
+        assertEquals(reloads + 1, ScriptCache.getReloadCount());
+        assertTrue(ScriptCache.isCurrent(first));
+    }
+
+    @Test
+    public void rereadsAScriptWhenItsLengthChanges() throws IOException {
+        write("print 'one'", 1000000000000L);
+        ScriptCache.ScriptSource first = ScriptCache.get(SCRIPT);
+
+        write("print 'three'", 1000000000000L);
+        assertFalse(ScriptCache.isCurrent(first));
+        assertEquals("print 'three'", ScriptCache.get(SCRIPT).getScript());
+    }
+
+    @Test
+    public void rereadsAScriptWhenItsModificationTimeChanges() throws IOException {
+        write("print 'one'", 1000000000000L);
+        ScriptCache.ScriptSource first = ScriptCache.get(SCRIPT);
+
+        write("print 'two'", 1000000005000L);
+        assertFalse(ScriptCache.isCurrent(first));
+        ScriptCache.ScriptSource second = ScriptCache.get(SCRIPT);
+        assertEquals("print 'two'", second.getScript());
+        assertTrue(ScriptCache.isCurrent(second));
+    }
+
+    @Test
+    public void aDeletedOverrideFallsBackToTheClasspath() throws IOException {
+        write("print 'override'", 1000000000000L);
+        ScriptCache.ScriptSource override = ScriptCache.get(SCRIPT);
+
+        script.delete();
+        assertFalse(ScriptCache.isCurrent(override));
+    }
+
+    private void write(String content, long lastModified) throws IOException {
+        Files.write(content, script, Charset.defaultCharset());
+        assertTrue(script.setLastModified(lastModified));
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptEngine;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class ScriptEnginePoolTest {
+
+    private static final String LIBRARY = "xlc/personalcredentials/library.py";
+
+    @Test
+    public void createsEnginesWithTheLibrariesEvaluated() throws Exception {
+        ScriptEnginePool pool = new ScriptEnginePool(ScriptEnginePool.ENGINE_NAME, LIBRARY, 2);
+        ScriptEngine engine = pool.borrow();
+        assertEquals("Hello pool", engine.eval("helloWorld('pool')"));
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void reusesAReleasedEngine() {
+        ScriptEnginePool pool = new ScriptEnginePool(ScriptEnginePool.ENGINE_NAME, LIBRARY, 2);
+        ScriptEngine engine = pool.borrow();
+        pool.release(engine, false);
+        assertSame(engine, pool.borrow());
+        assertEquals(1, pool.getSize());
+    }
+
+    @Test
+    public void recyclesABrokenEngine() {
+        ScriptEnginePool pool = new ScriptEnginePool(ScriptEnginePool.ENGINE_NAME, LIBRARY, 1);
+        ScriptEngine engine = pool.borrow();
+        pool.release(engine, true);
+        assertEquals(1, pool.getRecycleCount());
+        assertNotSame(engine, pool.borrow());
+    }
+
+    @Test
+    public void recyclesAnEngineAfterItsMaximumUses() {
+        ScriptEnginePool pool = new ScriptEnginePool(ScriptEnginePool.ENGINE_NAME, LIBRARY, 1);
+        ScriptEngine engine = null;
+        for (int i = 0; i < ScriptEnginePool.MAX_USES; i++) {
+            engine = pool.borrow();
+            pool.release(engine, false);
+        }
+        assertEquals(1, pool.getRecycleCount());
+        assertNotSame(engine, pool.borrow());
+    }
+
+    @Test
+    public void aScriptDoesNotLeaveItsVariablesInThePooledEngine() {
+        StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1");
+        ScriptRunner.executeScript(null, null, Collections.<Host>singleton(host), "test-scripts/setusername.py", LIBRARY);
+        assertEquals("Hello deployer", host.getProperty("username"));
+
+        ScriptEngine engine = ScriptEnginePool.forClasspath(LIBRARY).borrow();
+        assertNull(engine.get("leaked"));
+        assertNull(engine.get(ScriptRunner.KEY_HOSTS));
+    }
+
+
+    @Test
+    public void waitsAtMostTheBorrowTimeout() {
+        ScriptEnginePool pool = new ScriptEnginePool(StubScriptEngineFactory.NAME, "", 1);
+        pool.borrow();
+
+        long start = System.nanoTime();
+        try {
+            pool.borrow(200, TimeUnit.MILLISECONDS);
+            fail("Expected no engine to be available");
+        } catch (ScriptExecutionException e) {
+            assertTrue(e.getElapsedMillis() >= 200);
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 5);
+    }
+
+    @Test
+    public void discardsTheEngineOfAFailingScript() {
+        ScriptEnginePool pool = ScriptEnginePool.forEngine(StubScriptEngineFactory.NAME, "stub-scripts/ok.stub");
+        run("stub-scripts/ok.stub", 0);
+        long recycled = pool.getRecycleCount();
+
+        try {
+            run("stub-scripts/fail.stub", 0);
+            fail("Expected the script to fail");
+        } catch (ScriptExecutionException expected) {
+        }
+
+        assertEquals(recycled + 1, pool.getRecycleCount());
+    }
+
+    @Test
+    public void abandonsAScriptThatIgnoresTheInterrupt() throws InterruptedException {
+        ScriptEnginePool pool = ScriptEnginePool.forEngine(StubScriptEngineFactory.NAME, "stub-scripts/ok.stub");
+        long recycled = pool.getRecycleCount();
+
+        try {
+            run("stub-scripts/spin.stub", 1);
+            fail("Expected the script to time out");
+        } catch (ScriptExecutionException expected) {
+        }
+
+        assertEquals(recycled + 1, pool.getRecycleCount());
+        assertEquals(1, ScriptExecutor.getAbandonedCount());
+        for (int i = 0; i < 100 && ScriptExecutor.getAbandonedCount() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, ScriptExecutor.getAbandonedCount());
+    }
+
+    private static void run(String script, int timeoutSeconds) {
+        ScriptRunner.executeScript(null, null, Collections.<Host>emptySet(), script, "stub-scripts/ok.stub", StubScriptEngineFactory.NAME, timeoutSeconds);
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ext.deployit.community.plugin.personalcredentials.credentials.HostCredentials;
+
+public class ScriptResultCacheTest {
+
+    private static final String SCRIPT = ScriptResultCache.scriptKey("scripts/credentials.py", "xlc/personalcredentials/library.py");
+    private static final HostCredentials SCOTT = new HostCredentials("scott", "tiger", null, null);
+
+    @After
+    public void clear() {
+        ScriptResultCache.invalidateAll();
+    }
+
+    @Test
+    public void returnsTheCachedCredentialsOfTheUserEnvironmentHostAndScript() {
+        ScriptResultCache.put("alice", "Environments/test", "Infrastructure/web-01", SCRIPT, SCOTT, 60);
+
+        assertEquals(SCOTT, ScriptResultCache.get("alice", "Environments/test", "Infrastructure/web-01", SCRIPT));
+        assertNull(ScriptResultCache.get("bob", "Environments/test", "Infrastructure/web-01", SCRIPT));
+        assertNull(ScriptResultCache.get("alice", "Environments/prod", "Infrastructure/web-01", SCRIPT));
+        assertNull(ScriptResultCache.get("alice", "Environments/test", "Infrastructure/db-01", SCRIPT));
+    }
+
+    @Test
+    public void doesNotServeTheCredentialsOfAnotherScript() {
+        ScriptResultCache.put("alice", "Environments/test", "Infrastructure/web-01", SCRIPT, SCOTT, 60);
+
+        assertNull(ScriptResultCache.get("alice", "Environments/test", "Infrastructure/web-01",
+                ScriptResultCache.scriptKey("scripts/other.py", "xlc/personalcredentials/library.py")));
+        assertNull(ScriptResultCache.get("alice", "Environments/test", "Infrastructure/web-01",
+                ScriptResultCache.scriptKey("scripts/credentials.py", "")));
+    }
+
+    @Test
+    public void expiredCredentialsAreNotReturned() throws InterruptedException {
+        ScriptResultCache.put("alice", "Environments/test", "Infrastructure/web-01", SCRIPT, SCOTT, 1);
+        Thread.sleep(1100);
+
+        assertNull(ScriptResultCache.get("alice", "Environments/test", "Infrastructure/web-01", SCRIPT));
+        assertEquals(0, ScriptResultCache.size());
+    }
+
+    @Test
+    public void doesNotCacheWithoutATtl() {
+        ScriptResultCache.put("alice", "Environments/test", "Infrastructure/web-01", SCRIPT, SCOTT, 0);
+
+        assertNull(ScriptResultCache.get("alice", "Environments/test", "Infrastructure/web-01", SCRIPT));
+    }
+
+    @Test
+    public void invalidatesTheCredentialsOfAllUsersOfAnEnvironment() {
+        ScriptResultCache.put("alice", "Environments/test", "Infrastructure/web-01", SCRIPT, SCOTT, 60);
+        ScriptResultCache.put("bob", "Environments/test", "Infrastructure/web-01", SCRIPT, SCOTT, 60);
+        ScriptResultCache.put("alice", "Environments/prod", "Infrastructure/web-01", SCRIPT, SCOTT, 60);
+
+        ScriptResultCache.invalidateEnvironment("Environments/test");
+
+        assertNull(ScriptResultCache.get("alice", "Environments/test", "Infrastructure/web-01", SCRIPT));
+        assertNull(ScriptResultCache.get("bob", "Environments/test", "Infrastructure/web-01", SCRIPT));
+        assertEquals(SCOTT, ScriptResultCache.get("alice", "Environments/prod", "Infrastructure/web-01", SCRIPT));
+    }
+}
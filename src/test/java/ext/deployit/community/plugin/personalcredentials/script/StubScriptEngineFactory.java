@@ -0,0 +1,136 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.script;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Script engine named <code>stub</code> that understands three statements: <code>ok</code>, <code>fail</code> and
+ * <code>spin &lt;millis&gt;</code>, which ignores interrupts like a busy Jython loop.
+ */
+public class StubScriptEngineFactory implements ScriptEngineFactory {
+
+    public static final String NAME = "stub";
+
+    @Override
+    public String getEngineName() {
+        return NAME;
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return "1";
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return Collections.singletonList(NAME);
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getNames() {
+        return Collections.singletonList(NAME);
+    }
+
+    @Override
+    public String getLanguageName() {
+        return NAME;
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return "1";
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        return ScriptEngine.NAME.equals(key) ? NAME : null;
+    }
+
+    @Override
+    public String getMethodCallSyntax(String obj, String m, String... args) {
+        return null;
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return null;
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        return null;
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new StubScriptEngine(this);
+    }
+
+    private static class StubScriptEngine extends AbstractScriptEngine {
+        private final ScriptEngineFactory factory;
+
+        StubScriptEngine(ScriptEngineFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public Object eval(String script, ScriptContext context) throws ScriptException {
+            String statement = script.trim();
+            if (statement.equals("fail")) {
+                throw new ScriptException("failed");
+            } else if (statement.startsWith("spin ")) {
+                Uninterruptibles.sleepUninterruptibly(Long.parseLong(statement.substring(5)), TimeUnit.MILLISECONDS);
+            } else if (!statement.equals("ok")) {
+                throw new ScriptException("Unknown statement " + statement);
+            }
+            return null;
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+            try {
+                return eval(CharStreams.toString(reader), context);
+            } catch (IOException e) {
+                throw new ScriptException(e);
+            }
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return factory;
+        }
+    }
+}
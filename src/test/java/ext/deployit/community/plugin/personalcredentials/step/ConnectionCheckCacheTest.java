@@ -0,0 +1,83 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class ConnectionCheckCacheTest {
+
+    private final StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1").with("username", "deployer").with("password", "secret");
+
+    @Before
+    @After
+    public void clear() {
+        ConnectionCheckCache.invalidateAll();
+    }
+
+    @Test
+    public void remembersASuccessfulCheck() {
+        assertFalse(ConnectionCheckCache.isFresh(host));
+        ConnectionCheckCache.recordSuccess(host, 60);
+        assertTrue(ConnectionCheckCache.isFresh(host));
+    }
+
+    @Test
+    public void doesNotRecordWithoutTtl() {
+        ConnectionCheckCache.recordSuccess(host, 0);
+        assertFalse(ConnectionCheckCache.isFresh(host));
+        assertEquals(0, ConnectionCheckCache.size());
+    }
+
+    @Test
+    public void aCredentialChangeInvalidatesTheEntry() {
+        ConnectionCheckCache.recordSuccess(host, 60);
+        host.setProperty("password", "changed");
+        assertFalse(ConnectionCheckCache.isFresh(host));
+        host.setProperty("password", "secret");
+        assertFalse(ConnectionCheckCache.isFresh(host));
+    }
+
+    @Test
+    public void anAddressChangeInvalidatesTheEntry() {
+        ConnectionCheckCache.recordSuccess(host, 60);
+        host.setProperty("address", "10.0.0.2");
+        assertFalse(ConnectionCheckCache.isFresh(host));
+    }
+
+    @Test
+    public void aTtlBeyondTheMaximumIsCapped() {
+        ConnectionCheckCache.recordSuccess(host, Integer.MAX_VALUE);
+        assertTrue(ConnectionCheckCache.isFresh(host));
+    }
+
+    @Test
+    public void staysWithinTheMaximumNumberOfEntries() {
+        int count = Math.min(ConnectionCheckCache.MAX_ENTRIES + 100, 200000);
+        for (int i = 0; i < count; i++) {
+            ConnectionCheckCache.recordSuccess(new StubHost("Infrastructure/host-" + i, "10.0.0.1"), 60);
+        }
+        assertTrue(ConnectionCheckCache.size() <= ConnectionCheckCache.MAX_ENTRIES);
+    }
+
+    @Test
+    public void invalidatesAHost() {
+        ConnectionCheckCache.recordSuccess(host, 60);
+        ConnectionCheckCache.invalidate(host);
+        assertFalse(ConnectionCheckCache.isFresh(host));
+    }
+}
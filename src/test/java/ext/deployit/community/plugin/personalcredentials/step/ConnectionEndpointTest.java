@@ -0,0 +1,70 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.overthere.Host;
+
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+
+public class ConnectionEndpointTest {
+
+    @Test
+    public void hostsReachingTheSameMachineTheSameWayShareTheEndpoint() {
+        assertEquals(ConnectionEndpoint.of(host("Infrastructure/web-01")), ConnectionEndpoint.of(host("Infrastructure/web-01-alias").withTags("web")));
+    }
+
+    @Test
+    public void sudoUserIsPartOfTheEndpoint() {
+        assertNotEquals(ConnectionEndpoint.of(host("Infrastructure/a")), ConnectionEndpoint.of(host("Infrastructure/b").with("sudoUsername", "root")));
+    }
+
+    @Test
+    public void windowsOptionsArePartOfTheEndpoint() {
+        assertNotEquals(ConnectionEndpoint.of(host("Infrastructure/a").with("cifsPort", 445)), ConnectionEndpoint.of(host("Infrastructure/b").with("cifsPort", 1445)));
+        assertNotEquals(ConnectionEndpoint.of(host("Infrastructure/a").with("winrmEnableHttps", false)), ConnectionEndpoint.of(host("Infrastructure/b").with("winrmEnableHttps", true)));
+    }
+
+    @Test
+    public void jumpstationIsPartOfTheEndpointById() {
+        StubHost jumpstation = new StubHost("Infrastructure/jump", "10.0.0.254");
+        assertEquals(ConnectionEndpoint.of(host("Infrastructure/a").with("jumpstation", jumpstation)),
+                ConnectionEndpoint.of(host("Infrastructure/b").with("jumpstation", new StubHost("Infrastructure/jump", "10.0.0.254"))));
+        assertNotEquals(ConnectionEndpoint.of(host("Infrastructure/a").with("jumpstation", jumpstation)), ConnectionEndpoint.of(host("Infrastructure/b")));
+    }
+
+    @Test
+    public void passwordsOnlyEnterTheEndpointHashed() {
+        String endpoint = ConnectionEndpoint.of(host("Infrastructure/a").with("suPassword", "t0p-s3cret"));
+
+        assertFalse(endpoint.contains("t0p-s3cret"));
+        assertNotEquals(endpoint, ConnectionEndpoint.of(host("Infrastructure/a").with("suPassword", "other")));
+    }
+
+    @Test
+    public void groupsHostsByEndpoint() {
+        StubHost first = host("Infrastructure/a");
+        StubHost second = host("Infrastructure/b");
+        StubHost other = host("Infrastructure/c").with("port", 2222);
+
+        assertEquals(2, ConnectionEndpoint.group(Arrays.<Host>asList(first, second, other)).size());
+    }
+
+    private static StubHost host(String id) {
+        return new StubHost(id, "10.0.0.1").with("username", "deployer").with("password", "secret");
+    }
+}
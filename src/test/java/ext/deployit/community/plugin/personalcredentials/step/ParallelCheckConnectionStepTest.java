@@ -0,0 +1,101 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.overthere.OverthereConnection;
+
+import ext.deployit.community.plugin.personalcredentials.step.ConnectionCheck.Result;
+import ext.deployit.community.plugin.personalcredentials.step.ConnectionCheck.Status;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+public class ParallelCheckConnectionStepTest {
+
+    @Test
+    public void passesWhenAllHostsAnswer() throws Exception {
+        List<String> output = new ArrayList<String>();
+        ParallelCheckConnectionStep step = new ParallelCheckConnectionStep(hosts(5, new CommandConnector(0, 0)), 2, 10);
+        assertEquals(StepExitCode.SUCCESS, step.execute(Stubs.context(output)));
+        assertTrue(output.toString(), output.contains("Connection check passed for 5 host(s)"));
+    }
+
+    @Test
+    public void failsWhenAHostDoesNotAnswer() throws Exception {
+        List<Host> hosts = hosts(3, new CommandConnector(0, 0));
+        hosts.add(new StubHost("Infrastructure/broken", "10.0.1.1").withConnector(new CommandConnector(1, 0)));
+        List<Result> results = new ParallelCheckConnectionStep(hosts, 2, 10).checkAll();
+        assertEquals(Status.PASSED, results.get(0).getStatus());
+        assertEquals(Status.FAILED, results.get(3).getStatus());
+        assertEquals(StepExitCode.FAIL, new ParallelCheckConnectionStep(hosts, 2, 10).execute(Stubs.context(new ArrayList<String>())));
+    }
+
+    @Test
+    public void hungConnectionsTimeOutAndHoldAtMostOneThreadPerWorker() throws Exception {
+        List<Result> results = new ParallelCheckConnectionStep(hosts(6, new CommandConnector(0, 5000)), 2, 1).checkAll();
+        for (Result result : results) {
+            assertEquals(Status.TIMEOUT, result.getStatus());
+        }
+        int connectionThreads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("personal-credentials-connection-")) {
+                connectionThreads++;
+            }
+        }
+        assertTrue(connectionThreads + " connection threads", connectionThreads <= 2);
+    }
+
+    private static List<Host> hosts(int count, StubHost.Connector connector) {
+        List<Host> hosts = new ArrayList<Host>();
+        for (int i = 0; i < count; i++) {
+            hosts.add(new StubHost("Infrastructure/host-" + i, "10.0.0." + i).withConnector(connector));
+        }
+        return hosts;
+    }
+
+    /**
+     * Connects to a host that answers the check command with the given exit code, after a delay that ignores interrupts.
+     */
+    @SuppressWarnings("serial")
+    private static class CommandConnector implements StubHost.Connector {
+        private final int exitCode;
+        private final long delayMillis;
+
+        CommandConnector(int exitCode, long delayMillis) {
+            this.exitCode = exitCode;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public OverthereConnection connect(StubHost host) {
+            Uninterruptibles.sleepUninterruptibly(delayMillis, TimeUnit.MILLISECONDS);
+            return (OverthereConnection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { OverthereConnection.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    return method.getName().equals("execute") ? exitCode : null;
+                }
+            });
+        }
+    }
+}
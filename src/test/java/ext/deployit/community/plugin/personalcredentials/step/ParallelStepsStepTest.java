@@ -0,0 +1,135 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+public class ParallelStepsStepTest {
+
+    private final List<String> output = new ArrayList<String>();
+    private final AtomicBoolean concurrentAccess = new AtomicBoolean();
+    private final ExecutionContext ctx = singleThreaded(Stubs.context(output), concurrentAccess);
+
+    @Test
+    public void serializesTheAccessToTheSharedContext() throws Exception {
+        List<Step> steps = new ArrayList<Step>();
+        for (int i = 0; i < 8; i++) {
+            steps.add(new LoggingStep("step-" + i, 50, StepExitCode.SUCCESS));
+        }
+        ctx.setAttribute("counter", new AtomicInteger());
+
+        assertEquals(StepExitCode.SUCCESS, new ParallelStepsStep("parallel", steps, 8).execute(ctx));
+
+        assertFalse(concurrentAccess.get());
+        assertEquals(2 + 8 * 50, output.size());
+        assertEquals(50, count("[step-3] "));
+        assertEquals(8 * 50, ((AtomicInteger) ctx.getAttribute("counter")).get());
+    }
+
+    @Test
+    public void failsWhenOneOfTheStepsDoesNotSucceed() throws Exception {
+        List<Step> steps = new ArrayList<Step>();
+        steps.add(new LoggingStep("ok", 1, StepExitCode.SUCCESS));
+        steps.add(new LoggingStep("ko", 1, StepExitCode.FAIL));
+
+        assertEquals(StepExitCode.FAIL, new ParallelStepsStep("parallel", steps, 2).execute(ctx));
+
+        assertTrue(output.contains("ERROR ko: FAIL"));
+        assertTrue(output.contains("ERROR 1 of 2 step(s) did not succeed"));
+    }
+
+    private int count(String prefix) {
+        int count = 0;
+        for (String line : output) {
+            if (line.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records in <code>concurrentAccess</code> when two threads are in the context at the same time.
+     */
+    private static ExecutionContext singleThreaded(final ExecutionContext delegate, final AtomicBoolean concurrentAccess) {
+        final AtomicBoolean inside = new AtomicBoolean();
+        return (ExecutionContext) Proxy.newProxyInstance(ParallelStepsStepTest.class.getClassLoader(), new Class<?>[] { ExecutionContext.class }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (!inside.compareAndSet(false, true)) {
+                    concurrentAccess.set(true);
+                }
+                try {
+                    Thread.yield();
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                } finally {
+                    inside.set(false);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("serial")
+    private static class LoggingStep implements Step {
+
+        private final String description;
+        private final int lines;
+        private final StepExitCode exitCode;
+
+        LoggingStep(String description, int lines, StepExitCode exitCode) {
+            this.description = description;
+            this.lines = lines;
+            this.exitCode = exitCode;
+        }
+
+        @Override
+        public int getOrder() {
+            return 50;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public StepExitCode execute(ExecutionContext ctx) throws Exception {
+            for (int i = 0; i < lines; i++) {
+                AtomicInteger counter = (AtomicInteger) ctx.getAttribute("counter");
+                if (counter != null) {
+                    counter.incrementAndGet();
+                }
+                ctx.logOutput("line " + i);
+            }
+            return exitCode;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.step;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.xebialabs.deployit.plugin.api.deployment.specification.Operation;
+import com.xebialabs.deployit.plugin.api.flow.Step;
+import com.xebialabs.deployit.plugin.api.flow.StepExitCode;
+import com.xebialabs.deployit.plugin.api.udm.Deployed;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.deployit.plugin.overthere.HostContainer;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+import ext.deployit.community.plugin.personalcredentials.contributor.IdentityContributor;
+import ext.deployit.community.plugin.personalcredentials.metrics.PlanningMetrics;
+import ext.deployit.community.plugin.personalcredentials.stub.StubDeployedApplication;
+import ext.deployit.community.plugin.personalcredentials.stub.StubEnvironment;
+import ext.deployit.community.plugin.personalcredentials.stub.StubHost;
+import ext.deployit.community.plugin.personalcredentials.stub.Stubs;
+
+public class ResolveCredentialsStepTest {
+
+    private final PlanningMetrics metrics = PlanningMetrics.getInstance();
+
+    @Before
+    public void enableMetrics() {
+        metrics.reset();
+        metrics.setEnabled(true);
+    }
+
+    @After
+    public void disableMetrics() {
+        metrics.setEnabled(false);
+        metrics.reset();
+    }
+
+    @Test
+    public void resolvesTheCredentialsWhenThePlanExecutes() throws Exception {
+        StubHost host = new StubHost("Infrastructure/web-01", "10.0.0.1");
+        StubDeployedApplication deployedApplication = new StubDeployedApplication("Environments/test/app", new StubEnvironment("Environments/test"),
+                CredentialsType.CT_USERNAME).with("username", "deployer").with("password", "secret").with("resolveCredentialsLazily", true);
+        Deployed<?, ?> deployed = Stubs.deployed("Infrastructure/web-01/app", host);
+
+        List<Step> steps = IdentityContributor.injectPersonalCredentials(Stubs.specification(deployedApplication, asList(
+                Stubs.delta(Operation.CREATE, null, deployed))));
+
+        assertEquals(1, steps.size());
+        assertTrue(steps.get(0) instanceof ResolveCredentialsStep);
+        Host planHost = ((HostContainer) deployed.getContainer()).getHost();
+        assertNull(planHost.getProperty("password"));
+
+        List<String> output = new ArrayList<String>();
+        assertEquals(StepExitCode.SUCCESS, steps.get(0).execute(Stubs.context(output)));
+
+        assertEquals("deployer", planHost.getProperty("username"));
+        assertEquals("secret", planHost.getProperty("password"));
+        assertEquals(1, metrics.getPhaseCount("EXECUTION_RESOLUTION"));
+        assertEquals(0, metrics.getPhaseCount("CREDENTIAL_INJECTION"));
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.stub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+import com.xebialabs.deployit.plugin.api.udm.base.BaseContainer;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.deployit.plugin.overthere.HostContainer;
+
+/**
+ * A container on a host, such as a server, or nested in another container, such as a data source of a server.
+ */
+@SuppressWarnings("serial")
+public class StubContainer extends BaseContainer implements HostContainer {
+
+    private final String id;
+    private final HostContainer parent;
+    private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+    public StubContainer(String id, HostContainer parent) {
+        this.id = id;
+        this.parent = parent;
+    }
+
+    @Override
+    public Host getHost() {
+        return parent.getHost();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return id.substring(id.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.valueOf("test.Container");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getProperty(String name) {
+        if (name.equals("host")) {
+            return (T) getHost();
+        }
+        return (T) properties.get(name);
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public boolean hasProperty(String name) {
+        return name.equals("host") || properties.containsKey(name);
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
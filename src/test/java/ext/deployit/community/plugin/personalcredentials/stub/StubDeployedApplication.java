@@ -0,0 +1,83 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.stub;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+import com.xebialabs.deployit.plugin.api.udm.Environment;
+
+import ext.deployit.community.plugin.personalcredentials.ci.CredentialsType;
+
+/**
+ * A deployed application backed by a map of properties, deployed to an environment with the given credentials type.
+ */
+@SuppressWarnings("serial")
+public class StubDeployedApplication extends DeployedApplication {
+
+    private final String id;
+    private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+
+    private final Environment environment;
+
+    public StubDeployedApplication(String id, Environment environment, CredentialsType credentialsType) {
+        this.id = id;
+        this.environment = environment;
+        properties.put("credentialsType", credentialsType);
+    }
+
+    @Override
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public StubDeployedApplication with(String name, Object value) {
+        setProperty(name, value);
+        return this;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return id.substring(id.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.valueOf("udm.DeployedApplication");
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getProperty(String name) {
+        return (T) properties.get(name);
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public boolean hasProperty(String name) {
+        return properties.containsKey(name);
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
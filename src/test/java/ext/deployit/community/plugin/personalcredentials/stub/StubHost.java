@@ -0,0 +1,129 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.stub;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.xebialabs.deployit.plugin.api.reflect.Type;
+import com.xebialabs.deployit.plugin.overthere.Host;
+import com.xebialabs.overthere.OperatingSystemFamily;
+import com.xebialabs.overthere.OverthereConnection;
+
+/**
+ * An overthere host backed by a map of properties. The connection properties of an SSH host are defined up front so
+ * that credentials can be set on it; connections come from a pluggable {@link Connector}.
+ */
+@SuppressWarnings("serial")
+public class StubHost extends Host {
+
+    public interface Connector extends Serializable {
+        OverthereConnection connect(StubHost host);
+    }
+
+    private final String id;
+    private final Map<String, Object> properties = new LinkedHashMap<String, Object>();
+    private OperatingSystemFamily os = OperatingSystemFamily.UNIX;
+    private Connector connector;
+
+    public StubHost(String id, String address) {
+        this.id = id;
+        properties.put("address", address);
+        properties.put("port", 22);
+        properties.put("connectionType", "SFTP");
+        properties.put("username", null);
+        properties.put("password", null);
+        properties.put("privateKeyFile", null);
+        properties.put("passphrase", null);
+        properties.put("sudoUsername", null);
+        properties.put("tags", new LinkedHashSet<String>());
+    }
+
+    public StubHost with(String name, Object value) {
+        setProperty(name, value);
+        return this;
+    }
+
+    public StubHost withTags(String... tags) {
+        Set<String> set = new LinkedHashSet<String>();
+        Collections.addAll(set, tags);
+        properties.put("tags", set);
+        return this;
+    }
+
+    public StubHost withOs(OperatingSystemFamily os) {
+        this.os = os;
+        return this;
+    }
+
+    public StubHost withConnector(Connector connector) {
+        this.connector = connector;
+        return this;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getName() {
+        return id.substring(id.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public Type getType() {
+        return Type.valueOf("overthere.SshHost");
+    }
+
+    @Override
+    public OperatingSystemFamily getOs() {
+        return os;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getTags() {
+        return (Set<String>) properties.get("tags");
+    }
+
+    @Override
+    public OverthereConnection getConnection() {
+        if (connector == null) {
+            throw new IllegalStateException("No connector for " + id);
+        }
+        return connector.connect(this);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getProperty(String name) {
+        return (T) properties.get(name);
+    }
+
+    @Override
+    public void setProperty(String name, Object value) {
+        properties.put(name, value);
+    }
+
+    @Override
+    public boolean hasProperty(String name) {
+        return properties.containsKey(name);
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
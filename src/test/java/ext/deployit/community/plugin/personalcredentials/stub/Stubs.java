@@ -0,0 +1,148 @@
+/**
+ * Copyright 2019 XEBIALABS
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software and associated documentation files (the "Software"), to deal in the Software without restriction, including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package ext.deployit.community.plugin.personalcredentials.stub;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.Lists;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Delta;
+import com.xebialabs.deployit.plugin.api.deployment.specification.DeltaSpecification;
+import com.xebialabs.deployit.plugin.api.deployment.specification.Operation;
+import com.xebialabs.deployit.plugin.api.flow.ExecutionContext;
+import com.xebialabs.deployit.plugin.api.udm.Container;
+import com.xebialabs.deployit.plugin.api.udm.Deployed;
+import com.xebialabs.deployit.plugin.api.udm.DeployedApplication;
+
+/**
+ * Stubs of the interfaces of the plugin API. The interfaces have more methods than the plugin uses, so they are
+ * implemented by proxies answering the methods the plugin calls and a default value for the others.
+ */
+public class Stubs {
+
+    public static Deployed<?, ?> deployed(String id, Container container) {
+        final Map<String, Object> properties = new ConcurrentHashMap<String, Object>();
+        properties.put("container", container);
+        return proxy(Deployed.class, new Answers() {
+            @Override
+            Object answer(Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getContainer")) {
+                    return properties.get("container");
+                } else if (name.equals("getProperty")) {
+                    return properties.get(args[0]);
+                } else if (name.equals("hasProperty")) {
+                    return properties.containsKey(args[0]);
+                } else if (name.equals("setProperty")) {
+                    properties.put((String) args[0], args[1]);
+                    return null;
+                }
+                return super.answer(method, args);
+            }
+        }, id);
+    }
+
+    public static Delta delta(final Operation operation, final Deployed<?, ?> previous, final Deployed<?, ?> deployed) {
+        return proxy(Delta.class, new Answers() {
+            @Override
+            Object answer(Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getOperation")) {
+                    return operation;
+                } else if (name.equals("getPrevious")) {
+                    return previous;
+                } else if (name.equals("getDeployed")) {
+                    return deployed;
+                }
+                return super.answer(method, args);
+            }
+        }, operation + " " + (deployed != null ? deployed : previous));
+    }
+
+    public static DeltaSpecification specification(final DeployedApplication deployedApplication, final List<Delta> deltas) {
+        return proxy(DeltaSpecification.class, new Answers() {
+            @Override
+            Object answer(Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getDeltas")) {
+                    return deltas;
+                } else if (name.equals("getDeployedApplication")) {
+                    return deployedApplication;
+                } else if (name.equals("getOperation")) {
+                    return Operation.CREATE;
+                }
+                return super.answer(method, args);
+            }
+        }, "specification of " + deployedApplication);
+    }
+
+    /**
+     * @return an execution context that records its output in the given list and keeps attributes in memory
+     */
+    public static ExecutionContext context(final List<String> output) {
+        final Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+        final List<String> log = output == null ? Collections.synchronizedList(Lists.<String>newArrayList()) : output;
+        return proxy(ExecutionContext.class, new Answers() {
+            @Override
+            Object answer(Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("logOutput")) {
+                    log.add((String) args[0]);
+                    return null;
+                } else if (name.equals("logError")) {
+                    log.add("ERROR " + args[0]);
+                    return null;
+                } else if (name.equals("getAttribute")) {
+                    return attributes.get(args[0]);
+                } else if (name.equals("setAttribute")) {
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                }
+                return super.answer(method, args);
+            }
+        }, "context");
+    }
+
+    private static <T> T proxy(Class<T> type, final Answers answers, final String description) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] { type }, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("toString") || name.equals("getId")) {
+                    return description;
+                } else if (name.equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                } else if (name.equals("equals")) {
+                    return proxy == args[0];
+                }
+                return answers.answer(method, args);
+            }
+        }));
+    }
+
+    static class Answers {
+        Object answer(Method method, Object[] args) {
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) {
+                return false;
+            } else if (returnType == int.class) {
+                return 0;
+            } else if (returnType == long.class) {
+                return 0L;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,2 @@
+hostIndex.setUsernameAndPassword(hostIndex.byOs("WINDOWS"), "administrator", "windows-secret")
+hostIndex.setCredentials({"Infrastructure/web-01": {"username": "deployer", "password": "unix-secret"}})
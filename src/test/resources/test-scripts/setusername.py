@@ -0,0 +1,3 @@
+for h in hosts:
+	h.setProperty("username", helloWorld("deployer"))
+leaked = "from a previous plan"